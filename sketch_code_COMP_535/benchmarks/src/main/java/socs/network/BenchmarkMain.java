@@ -0,0 +1,31 @@
+package socs.network;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks like the JMH main does, taking the same command line, but always with the
+ * GC profiler so the allocation rate per operation is reported next to the time
+ * <p/>
+ * java -jar target/benchmarks.jar [JMH options, e.g. SpfBenchmark -p routers=1000]
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp() || commandLine.shouldList()
+            || commandLine.shouldListWithParams() || commandLine.shouldListProfilers()
+            || commandLine.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    Options options = new OptionsBuilder()
+            .parent(commandLine)
+            .addProfiler(GCProfiler.class)
+            .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,73 @@
+package socs.network.message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import socs.network.sim.Topology;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a whole frame, length prefix included, of an LSAUPDATE carrying lsas LSAs of four links each,
+ * encoded and decoded with either codec
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+  static final int LINKS_PER_LSA = 4;
+
+  @Param({"1", "10", "100", "1000"})
+  public int lsas;
+
+  @Param({"java", "binary"})
+  public String codec;
+
+  private PacketCodec packetCodec;
+  private SOSPFPacket packet;
+  private byte[] frame;
+
+  @Setup
+  public void setUp() throws IOException {
+    packetCodec = PacketFrames.codec(codec);
+    packet = new SOSPFPacket((short) 1, "192.168.1.1", "192.168.1.2", "192.168.1.1", "192.168.1.2",
+            "127.1.1.0", (short) 5001);
+    packet.visited = VisitedSet.EMPTY.plus("192.168.1.1");
+    packet.lsaArray = new Vector<LSA>();
+    for (int i = 0; i < lsas; i++) {
+      List<LinkDescription> links = new ArrayList<LinkDescription>();
+      links.add(new LinkDescription(Topology.address(i), -1, 0));
+      for (int j = 1; j <= LINKS_PER_LSA; j++) {
+        links.add(new LinkDescription(Topology.address((i + j) % Math.max(lsas, LINKS_PER_LSA + 1)), 5000 + j, j));
+      }
+      packet.lsaArray.add(new LSA(Topology.address(i), i, links));
+    }
+    frame = PacketFrames.encode(packetCodec, packet);
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return PacketFrames.encode(packetCodec, packet);
+  }
+
+  @Benchmark
+  public SOSPFPacket decode() throws IOException {
+    return PacketFrames.decode(frame, 4, frame.length - 4);
+  }
+}
@@ -0,0 +1,48 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.sim.Topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * the LSAs of a connected network of routers 0 .. size-1 for the benchmarks: a ring, so every
+ * router is reachable, plus random chords until the average degree is about four
+ */
+class BenchmarkLsas {
+
+  static final int MAX_WEIGHT = 10;
+
+  private BenchmarkLsas() {}
+
+  /**
+   * @return one LSA per router at sequence number 1, router 0's first
+   */
+  static List<LSA> network(int size, Random random) {
+    List<List<LinkDescription>> links = new ArrayList<List<LinkDescription>>();
+    for (int i = 0; i < size; i++) {
+      List<LinkDescription> own = new ArrayList<LinkDescription>();
+      own.add(new LinkDescription(Topology.address(i), -1, 0));
+      links.add(own);
+    }
+    for (int i = 0; i < size && size > 1; i++) link(links, i, (i + 1) % size, random);
+    for (int i = 0; i < size && size > 2; i++) link(links, i, random.nextInt(size), random);
+
+    List<LSA> lsas = new ArrayList<LSA>();
+    for (int i = 0; i < size; i++) lsas.add(new LSA(Topology.address(i), 1, links.get(i)));
+    return lsas;
+  }
+
+  private static void link(List<List<LinkDescription>> links, int u, int v, Random random) {
+    if (u == v) return;
+    for (LinkDescription ld : links.get(u)) {
+      if (ld.linkID.equals(Topology.address(v))) return;
+    }
+    int weight = 1 + random.nextInt(MAX_WEIGHT);
+    links.get(u).add(new LinkDescription(Topology.address(v), v + 1, weight));
+    links.get(v).add(new LinkDescription(Topology.address(u), u + 1, weight));
+  }
+}
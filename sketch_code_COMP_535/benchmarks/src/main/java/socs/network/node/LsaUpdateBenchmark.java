@@ -0,0 +1,156 @@
+package socs.network.node;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import socs.network.message.LSA;
+import socs.network.message.LsaFilter;
+import socs.network.message.PacketFrames;
+import socs.network.message.SOSPFPacket;
+import socs.network.message.VisitedSet;
+import socs.network.sim.Topology;
+import socs.network.util.Configuration;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LSAUPDATE packets handed to a router the way its transport would, i.e. everything
+ * lsaupdateMessage does for a packet short of sending: the router has no neighbors to forward to
+ * <p/>
+ * freshUpdate carries lsasPerUpdate LSAs newer than the installed ones, each one is installed;
+ * staleUpdate carries LSAs the router already has, which are all discarded; it starts from the
+ * encoded frame like SelectorServer does, so the filter skips them while decoding
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LsaUpdateBenchmark {
+
+  static final String NEIGHBOR = "10.255.255.254";
+
+  @Param({"100", "1000"})
+  public int routers;
+
+  @Param({"1", "10", "100"})
+  public int lsasPerUpdate;
+
+  private Router router;
+  private PacketHandler handler;
+  private LsaFilter known;
+  private PrintStream stdout;
+  private LSA[] lsas;
+  private int next = 0;
+  private byte[] stale;
+
+  @Setup
+  public void setUp() throws IOException {
+    // the router prints a prompt for every packet, nobody reads it here
+    stdout = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) {
+      }
+
+      public void write(byte[] b, int off, int len) {
+      }
+    }));
+
+    Configuration config = new Configuration();
+    config.addEntry("socs.network.router.ip", Topology.address(0));
+    config.addEntry("socs.network.router.port", "1");
+    HandlerTransport transport = new HandlerTransport();
+    router = new Router(config, transport);
+    handler = transport.packets;
+    known = transport.known;
+
+    // the benchmarked router's own LSA is not the neighbor's to send
+    List<LSA> network = BenchmarkLsas.network(routers, new Random(1));
+    lsas = network.subList(1, network.size()).toArray(new LSA[0]);
+    Vector<LSA> all = new Vector<LSA>();
+    for (LSA lsa : lsas) all.add(lsa);
+    handler.handle(update(all));
+
+    Vector<LSA> installed = new Vector<LSA>();
+    for (int i = 0; i < Math.min(lsasPerUpdate, lsas.length); i++) installed.add(lsas[i]);
+    stale = PacketFrames.encode(PacketFrames.codec("binary"), update(installed));
+  }
+
+  @TearDown
+  public void tearDown() {
+    router.shutdown();
+    System.setOut(stdout);
+  }
+
+  @Benchmark
+  public void freshUpdate() {
+    Vector<LSA> newer = new Vector<LSA>();
+    for (int i = 0; i < lsasPerUpdate; i++) {
+      LSA lsa = lsas[next];
+      lsas[next] = lsa.withSeqNumber(lsa.lsaSeqNumber + 1);
+      newer.add(lsas[next]);
+      next = (next + 1) % lsas.length;
+    }
+    handler.handle(update(newer));
+  }
+
+  @Benchmark
+  public void staleUpdate() throws IOException {
+    handler.handle(PacketFrames.decode(stale, 4, stale.length - 4, known));
+  }
+
+  private static SOSPFPacket update(Vector<LSA> lsas) {
+    SOSPFPacket packet = new SOSPFPacket((short) 1, NEIGHBOR, Topology.address(0), NEIGHBOR,
+            Topology.address(0), "127.1.1.0", (short) 2);
+    packet.visited = VisitedSet.EMPTY.plus(NEIGHBOR);
+    packet.lsaArray = lsas;
+    return packet;
+  }
+
+  /**
+   * keeps the router's packet handler and LSA filter, nothing goes anywhere
+   */
+  static class HandlerTransport implements Transport {
+
+    PacketHandler packets;
+    LsaFilter known;
+
+    public void start(String processIP, short processPort, PacketHandler packets, LsaFilter known,
+                      PacketHandler datagrams) {
+      this.packets = packets;
+      this.known = known;
+    }
+
+    public Connection connect(String processIP, short processPort) {
+      return new Connection() {
+        public void send(SOSPFPacket packet) {
+        }
+
+        public void close() {
+        }
+      };
+    }
+
+    public void sendDatagram(String processIP, short processPort, SOSPFPacket packet) {
+    }
+
+    public void close() {
+    }
+  }
+}
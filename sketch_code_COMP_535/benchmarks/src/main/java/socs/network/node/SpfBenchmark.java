@@ -0,0 +1,76 @@
+package socs.network.node;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+import socs.network.sim.Topology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LinkStateDatabase.getShortestPath from router 0 of a network of the given size
+ * <p/>
+ * cachedPath asks again on an unchanged database, so the tree is already there; afterChange
+ * first installs a newer LSA of some router with one link metric changed, so every call pays
+ * for a full or an incremental SPF run
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpfBenchmark {
+
+  @Param({"100", "1000", "10000"})
+  public int routers;
+
+  @Param({"false", "true"})
+  public boolean incremental;
+
+  private LinkStateDatabase lsd;
+  private String destination;
+  private Random random;
+
+  @Setup
+  public void setUp() {
+    random = new Random(1);
+    RouterDescription rd = new RouterDescription();
+    rd.simulatedIPAddress = Topology.address(0);
+    lsd = new LinkStateDatabase(rd);
+    lsd.setIncrementalSpf(incremental);
+    for (LSA lsa : BenchmarkLsas.network(routers, random)) lsd.install(lsa);
+    // halfway round the ring, as far as it gets
+    destination = Topology.address(routers / 2);
+    if (lsd.getShortestPath(destination) == null) throw new IllegalStateException(destination + " unreachable");
+  }
+
+  @Benchmark
+  public String cachedPath() {
+    return lsd.getShortestPath(destination);
+  }
+
+  @Benchmark
+  public String afterChange() {
+    LSA current = lsd.get(Topology.address(1 + random.nextInt(routers - 1)));
+    // links.get(0) is the router's own entry
+    int changed = 1 + random.nextInt(current.links.size() - 1);
+    List<LinkDescription> links = new ArrayList<LinkDescription>(current.links);
+    links.set(changed, links.get(changed).withMetric(1 + random.nextInt(BenchmarkLsas.MAX_WEIGHT)));
+    lsd.install(current.withLinks(links).withSeqNumber(current.lsaSeqNumber + 1));
+    return lsd.getShortestPath(destination);
+  }
+}
@@ -5,12 +5,19 @@ import socs.network.util.Configuration;
 
 public class Main {
 
-  public static void main(String[] args) {
-    if (args.length != 1) {
-      System.out.println("usage: program conf_path");
+  public static void main(String[] args) throws Exception {
+    if (args.length != 1 && !(args.length == 3 && args[1].equals("--script"))) {
+      System.out.println("usage: program conf_path [--script script_path]");
       System.exit(1);
     }
     Router r = new Router(new Configuration(args[0]));
-    r.terminal();
+    if (args.length == 1) {
+      r.terminal();
+      return;
+    }
+    // no terminal: the router stays up for its neighbors until the script quits or it is killed
+    r.runScript(args[2]);
+    System.out.println("script done, still running");
+    Thread.currentThread().join();
   }
 }
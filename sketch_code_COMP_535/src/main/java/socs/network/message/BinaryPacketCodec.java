@@ -0,0 +1,398 @@
+package socs.network.message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * compact, explicitly laid out encoding of a SOSPFPacket
+ * <p/>
+ * all router and process addresses must be dotted IPv4 addresses, they are sent as 4 bytes.
+ * Multi-byte numbers are big endian, varints are unsigned LEB128. A change to the layout below
+ * bumps VERSION, and the layout is updated with it.
+ * <pre>
+ * u8      version (5)
+ * u8      sospfType
+ * u16     flags, see the FLAG_ constants; absent fields are not written
+ * ipv4    srcProcessIP
+ * u16     srcProcessPort
+ * ipv4    srcIP
+ * ipv4    dstIP
+ * ipv4    routerID
+ * ipv4    neighborID
+ * set     visited     varint count, then the first router as ipv4 and every further one as the
+ *                     varint difference to the one before, the routers in ascending order as
+ *                     signed ints
+ * varint  number of LSAs, then for each LSA:
+ *   ipv4    linkStateID
+ *   varint  lsaSeqNumber - Integer.MIN_VALUE, so fresh LSAs take one or two bytes
+ *   varint  lsaAge
+ *   varint  number of links, then for each link a fixed 10 byte record:
+ *     ipv4  linkID
+ *     i16   portNum
+ *     i32   tosMetrics
+ * varint  number of LSA deltas, then for each delta:
+ *   ipv4    linkStateID
+ *   varint  baseSeqNumber - Integer.MIN_VALUE
+ *   varint  lsaSeqNumber - baseSeqNumber
+ *   varint  number of added links, then a link record for each
+ *   varint  number of removed links, then the ipv4 linkID of each
+ * varint  number of requested LSAs, then the ipv4 linkStateID of each
+ * varint  number of LSA headers in the database description, then for each header:
+ *   ipv4    linkStateID
+ *   i32     lsaSeqNumber
+ * </pre>
+ */
+public class BinaryPacketCodec implements PacketCodec {
+
+  public static final byte FORMAT = 1;
+  public static final byte VERSION = 5;
+
+  static final int LINK_RECORD_SIZE = 10;
+
+  private static final int FLAG_ORIGINAL_TRIGGER = 1;
+  private static final int FLAG_LSA_ARRAY = 1 << 1;
+  private static final int FLAG_SRC_PROCESS_IP = 1 << 2;
+  private static final int FLAG_SRC_IP = 1 << 3;
+  private static final int FLAG_DST_IP = 1 << 4;
+  private static final int FLAG_ROUTER_ID = 1 << 5;
+  private static final int FLAG_NEIGHBOR_ID = 1 << 6;
+  private static final int FLAG_VISITED = 1 << 7;
+  private static final int FLAG_DELTA_ARRAY = 1 << 8;
+  private static final int FLAG_LSA_REQUEST = 1 << 9;
+  private static final int FLAG_DB_SUMMARY = 1 << 10;
+
+  public byte format() {
+    return FORMAT;
+  }
+
+  public byte[] encode(SOSPFPacket packet) {
+    Writer w = new Writer(64 + (packet.lsaArray == null ? 0 : packet.lsaArray.size() * 64));
+
+    int flags = 0;
+    if (packet.originalTrigger) flags |= FLAG_ORIGINAL_TRIGGER;
+    if (packet.lsaArray != null) flags |= FLAG_LSA_ARRAY;
+    if (packet.srcProcessIP != null) flags |= FLAG_SRC_PROCESS_IP;
+    if (packet.srcIP != null) flags |= FLAG_SRC_IP;
+    if (packet.dstIP != null) flags |= FLAG_DST_IP;
+    if (packet.routerID != null) flags |= FLAG_ROUTER_ID;
+    if (packet.neighborID != null) flags |= FLAG_NEIGHBOR_ID;
+    if (packet.visited != null) flags |= FLAG_VISITED;
+    if (packet.deltaArray != null) flags |= FLAG_DELTA_ARRAY;
+    if (packet.lsaRequest != null) flags |= FLAG_LSA_REQUEST;
+    if (packet.dbSummary != null) flags |= FLAG_DB_SUMMARY;
+
+    w.u8(VERSION);
+    w.u8(packet.sospfType);
+    w.u16(flags);
+    if (packet.srcProcessIP != null) w.ipv4(packet.srcProcessIP);
+    w.u16(packet.srcProcessPort);
+    if (packet.srcIP != null) w.ipv4(packet.srcIP);
+    if (packet.dstIP != null) w.ipv4(packet.dstIP);
+    if (packet.routerID != null) w.ipv4(packet.routerID);
+    if (packet.neighborID != null) w.ipv4(packet.neighborID);
+    if (packet.visited != null) w.visited(packet.visited);
+
+    if (packet.lsaArray != null) {
+      w.varint(packet.lsaArray.size());
+      for (LSA lsa : packet.lsaArray) {
+        w.ipv4(lsa.linkStateID);
+        w.varint(lsa.lsaSeqNumber - Integer.MIN_VALUE);
+        w.varint(lsa.lsaAge);
+        w.varint(lsa.links.size());
+        for (LinkDescription ld : lsa.links) w.link(ld);
+      }
+    }
+    if (packet.deltaArray != null) {
+      w.varint(packet.deltaArray.size());
+      for (LSADelta delta : packet.deltaArray) {
+        w.ipv4(delta.linkStateID);
+        w.varint(delta.baseSeqNumber - Integer.MIN_VALUE);
+        w.varint(delta.lsaSeqNumber - delta.baseSeqNumber);
+        w.varint(delta.added.size());
+        for (LinkDescription ld : delta.added) w.link(ld);
+        w.varint(delta.removed.size());
+        for (String linkID : delta.removed) w.ipv4(linkID);
+      }
+    }
+    if (packet.lsaRequest != null) {
+      w.varint(packet.lsaRequest.size());
+      for (String linkStateID : packet.lsaRequest) w.ipv4(linkStateID);
+    }
+    if (packet.dbSummary != null) {
+      w.varint(packet.dbSummary.size());
+      for (LSAHeader header : packet.dbSummary) {
+        w.ipv4(header.linkStateID);
+        w.i32(header.lsaSeqNumber);
+      }
+    }
+    return w.toByteArray();
+  }
+
+  public SOSPFPacket decode(byte[] buf, int offset, int length) throws MalformedPacketException {
+    return decode(buf, offset, length, LsaFilter.NONE);
+  }
+
+  public SOSPFPacket decode(byte[] buf, int offset, int length, LsaFilter filter) throws MalformedPacketException {
+    Reader r = new Reader(buf, offset, length);
+
+    int version = r.u8();
+    if (version != VERSION) {
+      throw new MalformedPacketException("Unsupported binary packet version " + version);
+    }
+
+    SOSPFPacket packet = new SOSPFPacket();
+    packet.sospfType = (short) r.u8();
+    int flags = r.u16();
+    packet.originalTrigger = (flags & FLAG_ORIGINAL_TRIGGER) != 0;
+    if ((flags & FLAG_SRC_PROCESS_IP) != 0) packet.srcProcessIP = r.ipv4();
+    packet.srcProcessPort = (short) r.u16();
+    if ((flags & FLAG_SRC_IP) != 0) packet.srcIP = r.ipv4();
+    if ((flags & FLAG_DST_IP) != 0) packet.dstIP = r.ipv4();
+    if ((flags & FLAG_ROUTER_ID) != 0) packet.routerID = r.ipv4();
+    if ((flags & FLAG_NEIGHBOR_ID) != 0) packet.neighborID = r.ipv4();
+    if ((flags & FLAG_VISITED) != 0) packet.visited = r.visited();
+
+    if ((flags & FLAG_LSA_ARRAY) != 0) {
+      int count = r.count(1);
+      packet.lsaArray = new Vector<LSA>(count);
+      for (int i = 0; i < count; i++) {
+        String linkStateID = r.ipv4();
+        int seq = r.varint() + Integer.MIN_VALUE;
+        int age = r.varint();
+        int linkCount = r.count(LINK_RECORD_SIZE);
+        if (filter.isKnown(linkStateID, seq, age)) {
+          // the header was enough to tell, the links are never looked at
+          r.skip(linkCount * LINK_RECORD_SIZE);
+          continue;
+        }
+        ArrayList<LinkDescription> links = new ArrayList<LinkDescription>(linkCount);
+        for (int j = 0; j < linkCount; j++) links.add(r.link());
+        packet.lsaArray.add(new LSA(linkStateID, seq, age, links));
+      }
+    }
+    if ((flags & FLAG_DELTA_ARRAY) != 0) {
+      int count = r.count(1);
+      packet.deltaArray = new Vector<LSADelta>(count);
+      for (int i = 0; i < count; i++) {
+        String linkStateID = r.ipv4();
+        int base = r.varint() + Integer.MIN_VALUE;
+        int seq = base + r.varint();
+        int addedCount = r.count(LINK_RECORD_SIZE);
+        ArrayList<LinkDescription> added = new ArrayList<LinkDescription>(addedCount);
+        for (int j = 0; j < addedCount; j++) added.add(r.link());
+        int removedCount = r.count(4);
+        ArrayList<String> removed = new ArrayList<String>(removedCount);
+        for (int j = 0; j < removedCount; j++) removed.add(r.ipv4());
+        if (filter.isKnown(linkStateID, seq, 0)) continue;
+        packet.deltaArray.add(new LSADelta(linkStateID, base, seq, added, removed));
+      }
+    }
+    if ((flags & FLAG_LSA_REQUEST) != 0) {
+      int count = r.count(4);
+      packet.lsaRequest = new Vector<String>(count);
+      for (int i = 0; i < count; i++) packet.lsaRequest.add(r.ipv4());
+    }
+    if ((flags & FLAG_DB_SUMMARY) != 0) {
+      int count = r.count(8);
+      packet.dbSummary = new Vector<LSAHeader>(count);
+      for (int i = 0; i < count; i++) packet.dbSummary.add(new LSAHeader(r.ipv4(), r.i32()));
+    }
+
+    if (r.remaining() != 0) {
+      throw new MalformedPacketException(r.remaining() + " trailing bytes after packet");
+    }
+    return packet;
+  }
+
+  /**
+   * @return the address as a big endian int
+   * @throws IllegalArgumentException if ip is not a dotted IPv4 address
+   */
+  static int parseIPv4(String ip) {
+    int value = 0;
+    int octet = -1;
+    int dots = 0;
+    for (int i = 0; i < ip.length(); i++) {
+      char c = ip.charAt(i);
+      if (c == '.') {
+        if (octet < 0 || ++dots > 3) throw notIPv4(ip);
+        value = (value << 8) | octet;
+        octet = -1;
+      } else if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) throw notIPv4(ip);
+      } else {
+        throw notIPv4(ip);
+      }
+    }
+    if (octet < 0 || dots != 3) throw notIPv4(ip);
+    return (value << 8) | octet;
+  }
+
+  static String formatIPv4(int ip) {
+    return ((ip >>> 24) & 0xff) + "." + ((ip >>> 16) & 0xff) + "." + ((ip >>> 8) & 0xff) + "." + (ip & 0xff);
+  }
+
+  private static IllegalArgumentException notIPv4(String ip) {
+    return new IllegalArgumentException("'" + ip + "' is not an IPv4 address, required by the binary codec");
+  }
+
+  private static final class Writer {
+    private byte[] buf;
+    private int pos = 0;
+
+    Writer(int capacity) {
+      buf = new byte[capacity];
+    }
+
+    private void ensure(int n) {
+      if (pos + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+    }
+
+    void u8(int v) {
+      ensure(1);
+      buf[pos++] = (byte) v;
+    }
+
+    void u16(int v) {
+      ensure(2);
+      buf[pos++] = (byte) (v >>> 8);
+      buf[pos++] = (byte) v;
+    }
+
+    void i32(int v) {
+      ensure(4);
+      buf[pos++] = (byte) (v >>> 24);
+      buf[pos++] = (byte) (v >>> 16);
+      buf[pos++] = (byte) (v >>> 8);
+      buf[pos++] = (byte) v;
+    }
+
+    // the int is treated as unsigned, so at most 5 bytes
+    void varint(int v) {
+      ensure(5);
+      while ((v & ~0x7f) != 0) {
+        buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      buf[pos++] = (byte) v;
+    }
+
+    void ipv4(String ip) {
+      i32(parseIPv4(ip));
+    }
+
+    void link(LinkDescription ld) {
+      ipv4(ld.linkID);
+      u16(ld.portNum);
+      i32(ld.tosMetrics);
+    }
+
+    // as ints the routers sort differently than as strings
+    void visited(VisitedSet visited) {
+      String[] ips = visited.toArray();
+      int[] routers = new int[ips.length];
+      for (int i = 0; i < ips.length; i++) routers[i] = parseIPv4(ips[i]);
+      Arrays.sort(routers);
+      varint(routers.length);
+      for (int i = 0; i < routers.length; i++) {
+        if (i == 0) i32(routers[0]);
+        else varint(routers[i] - routers[i - 1]);
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buf, pos);
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] buf;
+    private int pos;
+    private final int end;
+
+    Reader(byte[] buf, int offset, int length) {
+      this.buf = buf;
+      this.pos = offset;
+      this.end = offset + length;
+    }
+
+    int remaining() {
+      return end - pos;
+    }
+
+    void skip(int n) throws MalformedPacketException {
+      need(n);
+      pos += n;
+    }
+
+    private void need(int n) throws MalformedPacketException {
+      if (end - pos < n) throw new MalformedPacketException("Packet truncated");
+    }
+
+    int u8() throws MalformedPacketException {
+      need(1);
+      return buf[pos++] & 0xff;
+    }
+
+    int u16() throws MalformedPacketException {
+      need(2);
+      int v = ((buf[pos] & 0xff) << 8) | (buf[pos + 1] & 0xff);
+      pos += 2;
+      return v;
+    }
+
+    int i32() throws MalformedPacketException {
+      need(4);
+      int v = ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16)
+              | ((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+      pos += 4;
+      return v;
+    }
+
+    int varint() throws MalformedPacketException {
+      int v = 0;
+      for (int shift = 0; shift < 35; shift += 7) {
+        int b = u8();
+        v |= (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) return v;
+      }
+      throw new MalformedPacketException("Varint longer than 5 bytes");
+    }
+
+    // an element count, checked against the bytes left so a bad count cannot allocate much
+    int count(int minElementSize) throws MalformedPacketException {
+      int n = varint();
+      if (n < 0 || (long) n * minElementSize > remaining()) {
+        throw new MalformedPacketException("Element count " + n + " exceeds packet size");
+      }
+      return n;
+    }
+
+    String ipv4() throws MalformedPacketException {
+      return formatIPv4(i32());
+    }
+
+    LinkDescription link() throws MalformedPacketException {
+      return new LinkDescription(ipv4(), (short) u16(), i32());
+    }
+
+    VisitedSet visited() throws MalformedPacketException {
+      int n = count(1);
+      if (n > VisitedSet.MAX_SIZE) {
+        throw new MalformedPacketException(n + " visited routers, at most " + VisitedSet.MAX_SIZE + " allowed");
+      }
+      List<String> routers = new ArrayList<String>(n);
+      int previous = 0;
+      for (int i = 0; i < n; i++) {
+        int router = i == 0 ? i32() : previous + varint();
+        if (i > 0 && router <= previous) throw new MalformedPacketException("Visited routers not sorted");
+        routers.add(formatIPv4(router));
+        previous = router;
+      }
+      return VisitedSet.of(routers);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package socs.network.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+
+/**
+ * the original format: plain Java serialization of the whole SOSPFPacket object graph
+ */
+public class JavaPacketCodec implements PacketCodec {
+
+  public static final byte FORMAT = 0;
+
+  public byte format() {
+    return FORMAT;
+  }
+
+  public byte[] encode(SOSPFPacket packet) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(packet);
+    out.close();
+    return bytes.toByteArray();
+  }
+
+  public SOSPFPacket decode(byte[] buf, int offset, int length) throws IOException {
+    return decode(buf, offset, length, LsaFilter.NONE);
+  }
+
+  // the whole object graph is read first, the known LSAs can only be dropped afterwards
+  public SOSPFPacket decode(byte[] buf, int offset, int length, LsaFilter filter) throws IOException {
+    SOSPFPacket packet = read(buf, offset, length);
+    if (packet.lsaArray != null) {
+      Iterator<LSA> it = packet.lsaArray.iterator();
+      while (it.hasNext()) {
+        LSA lsa = it.next();
+        if (filter.isKnown(lsa.linkStateID, lsa.lsaSeqNumber, lsa.lsaAge)) it.remove();
+      }
+    }
+    if (packet.deltaArray != null) {
+      Iterator<LSADelta> it = packet.deltaArray.iterator();
+      while (it.hasNext()) {
+        LSADelta delta = it.next();
+        if (filter.isKnown(delta.linkStateID, delta.lsaSeqNumber, 0)) it.remove();
+      }
+    }
+    return packet;
+  }
+
+  private SOSPFPacket read(byte[] buf, int offset, int length) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf, offset, length));
+    try {
+      return (SOSPFPacket) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new MalformedPacketException("Unknown class in packet", e);
+    } catch (ClassCastException e) {
+      throw new MalformedPacketException("Frame does not hold a SOSPFPacket", e);
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -1,15 +1,61 @@
 package socs.network.message;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/**
+ * immutable, a changed LSA is always a new instance so that it can be shared between the link
+ * state database, its snapshots and the packets being sent
+ * <p/>
+ * lsaAge is how many seconds old the instance was when it was sent or stored, a new instance
+ * starts at 0; the age it has by now is kept track of by whoever holds it, see LsaAging
+ */
 public class LSA implements Serializable {
 
   //IP address of the router originate this LSA
-  public String linkStateID;
-  public int lsaSeqNumber = Integer.MIN_VALUE;
+  public final String linkStateID;
+  public final int lsaSeqNumber;
+  public final int lsaAge;
 
-  public LinkedList<LinkDescription> links = new LinkedList<LinkDescription>();
+  public final List<LinkDescription> links;
+
+  public LSA(String linkStateID, int lsaSeqNumber, List<LinkDescription> links) {
+    this(linkStateID, lsaSeqNumber, 0, links);
+  }
+
+  public LSA(String linkStateID, int lsaSeqNumber, int lsaAge, List<LinkDescription> links) {
+    this.linkStateID = linkStateID;
+    this.lsaSeqNumber = lsaSeqNumber;
+    this.lsaAge = lsaAge;
+    this.links = Collections.unmodifiableList(new ArrayList<LinkDescription>(links));
+  }
+
+  /**
+   * a new instance, aged 0
+   */
+  public LSA withSeqNumber(int seq) {
+    return new LSA(linkStateID, seq, 0, links);
+  }
+
+  public LSA withLinks(List<LinkDescription> newLinks) {
+    return new LSA(linkStateID, lsaSeqNumber, lsaAge, newLinks);
+  }
+
+  public LSA withAge(int age) {
+    return new LSA(linkStateID, lsaSeqNumber, age, links);
+  }
+
+  /**
+   * @return null if there is no link to target
+   */
+  public LinkDescription linkTo(String target) {
+    for (LinkDescription ld : links) {
+      if (ld.linkID.equals(target)) return ld;
+    }
+    return null;
+  }
 
   @Override
   public String toString() {
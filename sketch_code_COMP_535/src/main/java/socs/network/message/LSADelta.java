@@ -0,0 +1,83 @@
+package socs.network.message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * the difference between two instances of one router's LSA, flooded instead of the newer LSA
+ * when it is much smaller
+ * <p/>
+ * only applies to the exact instance it was computed from: a receiver whose copy has another
+ * sequence number than baseSeqNumber has to ask for the full LSA
+ */
+public class LSADelta implements Serializable {
+
+  public final String linkStateID;
+  public final int baseSeqNumber;
+  public final int lsaSeqNumber;
+
+  // links that are new or whose port or metric changed, replacing those with the same linkID
+  public final List<LinkDescription> added;
+  // linkIDs of the links that are gone
+  public final List<String> removed;
+
+  public LSADelta(String linkStateID, int baseSeqNumber, int lsaSeqNumber,
+                  List<LinkDescription> added, List<String> removed) {
+    this.linkStateID = linkStateID;
+    this.baseSeqNumber = baseSeqNumber;
+    this.lsaSeqNumber = lsaSeqNumber;
+    this.added = Collections.unmodifiableList(new ArrayList<LinkDescription>(added));
+    this.removed = Collections.unmodifiableList(new ArrayList<String>(removed));
+  }
+
+  /**
+   * @return what turns base into next, both have to be LSAs of the same router
+   */
+  public static LSADelta between(LSA base, LSA next) {
+    ArrayList<LinkDescription> added = new ArrayList<LinkDescription>();
+    ArrayList<String> removed = new ArrayList<String>();
+    for (LinkDescription ld : next.links) {
+      LinkDescription old = base.linkTo(ld.linkID);
+      if (old == null || old.portNum != ld.portNum || old.tosMetrics != ld.tosMetrics) added.add(ld);
+    }
+    for (LinkDescription ld : base.links) {
+      if (next.linkTo(ld.linkID) == null) removed.add(ld.linkID);
+    }
+    return new LSADelta(next.linkStateID, base.lsaSeqNumber, next.lsaSeqNumber, added, removed);
+  }
+
+  public int size() {
+    return added.size() + removed.size();
+  }
+
+  /**
+   * @return the newer LSA, null if base is not the instance this delta was computed from
+   */
+  public LSA applyTo(LSA base) {
+    if (base == null || !base.linkStateID.equals(linkStateID) || base.lsaSeqNumber != baseSeqNumber) {
+      return null;
+    }
+    HashSet<String> dropped = new HashSet<String>(removed);
+    LinkedHashMap<String, LinkDescription> changed = new LinkedHashMap<String, LinkDescription>();
+    for (LinkDescription ld : added) changed.put(ld.linkID, ld);
+
+    // changed links keep their place, new ones go last
+    ArrayList<LinkDescription> links = new ArrayList<LinkDescription>();
+    for (LinkDescription ld : base.links) {
+      if (dropped.contains(ld.linkID)) continue;
+      LinkDescription replacement = changed.remove(ld.linkID);
+      links.add(replacement == null ? ld : replacement);
+    }
+    links.addAll(changed.values());
+    return new LSA(linkStateID, lsaSeqNumber, links);
+  }
+
+  @Override
+  public String toString() {
+    return linkStateID + ":" + baseSeqNumber + "->" + lsaSeqNumber + " +" + added + " -" + removed + "\n";
+  }
+}
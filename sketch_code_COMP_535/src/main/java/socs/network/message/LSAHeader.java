@@ -0,0 +1,27 @@
+package socs.network.message;
+
+import java.io.Serializable;
+
+/**
+ * what identifies one instance of a router's LSA, exchanged in place of the LSA itself when
+ * two neighbors compare their link state databases
+ */
+public class LSAHeader implements Serializable {
+
+  public final String linkStateID;
+  public final int lsaSeqNumber;
+
+  public LSAHeader(String linkStateID, int lsaSeqNumber) {
+    this.linkStateID = linkStateID;
+    this.lsaSeqNumber = lsaSeqNumber;
+  }
+
+  public static LSAHeader of(LSA lsa) {
+    return new LSAHeader(lsa.linkStateID, lsa.lsaSeqNumber);
+  }
+
+  @Override
+  public String toString() {
+    return linkStateID + ":" + lsaSeqNumber;
+  }
+}
@@ -2,12 +2,11 @@ package socs.network.message;
 
 import java.io.Serializable;
 
+// immutable like the LSA holding it
 public class LinkDescription implements Serializable {
-  public String linkID;
-  public int portNum;
-  public int tosMetrics;
-  
-  public LinkDescription(){}
+  public final String linkID;
+  public final int portNum;
+  public final int tosMetrics;
   
   public LinkDescription(String linkID, int portNum, int tosMetrics){
 	  this.linkID = linkID;
@@ -15,6 +14,10 @@ public class LinkDescription implements Serializable {
 	  this.tosMetrics = tosMetrics;
   }
 
+  public LinkDescription withMetric(int metric) {
+    return new LinkDescription(linkID, portNum, metric);
+  }
+
   public String toString() {
     return linkID + ","  + portNum + "," + tosMetrics;
   }
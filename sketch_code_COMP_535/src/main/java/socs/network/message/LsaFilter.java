@@ -0,0 +1,21 @@
+package socs.network.message;
+
+/**
+ * tells a decoder which LSAs the receiver has no use for, so they are dropped while the packet
+ * is decoded: with the binary codec their links are skipped without being read
+ * <p/>
+ * called on the threads decoding the packets, must not block
+ */
+public interface LsaFilter {
+
+  LsaFilter NONE = new LsaFilter() {
+    public boolean isKnown(String linkStateID, int lsaSeqNumber, int lsaAge) {
+      return false;
+    }
+  };
+
+  /**
+   * @return true if the receiver has this instance or a newer one and the LSA can be dropped
+   */
+  boolean isKnown(String linkStateID, int lsaSeqNumber, int lsaAge);
+}
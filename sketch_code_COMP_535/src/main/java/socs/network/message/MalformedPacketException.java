@@ -0,0 +1,17 @@
+package socs.network.message;
+
+import java.io.IOException;
+
+/**
+ * thrown when bytes received from a neighbor cannot be turned back into a SOSPFPacket
+ */
+public class MalformedPacketException extends IOException {
+
+  public MalformedPacketException(String message) {
+    super(message);
+  }
+
+  public MalformedPacketException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
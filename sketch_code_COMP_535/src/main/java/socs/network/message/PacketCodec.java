@@ -0,0 +1,26 @@
+package socs.network.message;
+
+import java.io.IOException;
+
+/**
+ * turns a SOSPFPacket into the payload of one frame on the wire and back
+ *
+ * @see PacketFrames
+ */
+public interface PacketCodec {
+
+  /**
+   * the byte written in front of every payload produced by this codec, so that receivers can
+   * decode frames from neighbors that use a different codec
+   */
+  byte format();
+
+  byte[] encode(SOSPFPacket packet) throws IOException;
+
+  SOSPFPacket decode(byte[] buf, int offset, int length) throws IOException;
+
+  /**
+   * decode without the LSAs and LSA deltas the filter knows already
+   */
+  SOSPFPacket decode(byte[] buf, int offset, int length, LsaFilter filter) throws IOException;
+}
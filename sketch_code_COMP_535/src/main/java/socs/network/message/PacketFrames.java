@@ -0,0 +1,91 @@
+package socs.network.message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * length-prefixed framing shared by all codecs
+ * <pre>
+ * i32   length of everything that follows
+ * u8    codec format, see PacketCodec.format()
+ * ...   payload produced by that codec
+ * </pre>
+ * a receiver picks the codec from the format byte, so routers using different codecs can
+ * still talk to each other
+ */
+public class PacketFrames {
+
+  // a frame larger than this is treated as garbage rather than allocated
+  public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+  private static final PacketCodec JAVA = new JavaPacketCodec();
+  private static final PacketCodec BINARY = new BinaryPacketCodec();
+
+  private PacketFrames() {}
+
+  /**
+   * @param name "java" or "binary"
+   */
+  public static PacketCodec codec(String name) {
+    if (name.equalsIgnoreCase("java")) return JAVA;
+    if (name.equalsIgnoreCase("binary")) return BINARY;
+    throw new IllegalArgumentException("Unknown packet codec " + name);
+  }
+
+  public static PacketCodec codec(byte format) throws MalformedPacketException {
+    if (format == JavaPacketCodec.FORMAT) return JAVA;
+    if (format == BinaryPacketCodec.FORMAT) return BINARY;
+    throw new MalformedPacketException("Unknown packet format " + format);
+  }
+
+  /**
+   * @return the frame, length prefix included, ready to be written to a stream or channel
+   */
+  public static byte[] encode(PacketCodec codec, SOSPFPacket packet) throws IOException {
+    byte[] payload = codec.encode(packet);
+    int length = payload.length + 1;
+    byte[] frame = new byte[length + 4];
+    frame[0] = (byte) (length >>> 24);
+    frame[1] = (byte) (length >>> 16);
+    frame[2] = (byte) (length >>> 8);
+    frame[3] = (byte) length;
+    frame[4] = codec.format();
+    System.arraycopy(payload, 0, frame, 5, payload.length);
+    return frame;
+  }
+
+  public static void write(DataOutputStream out, PacketCodec codec, SOSPFPacket packet) throws IOException {
+    out.write(encode(codec, packet));
+    out.flush();
+  }
+
+  public static SOSPFPacket read(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 1 || length > MAX_FRAME_LENGTH) {
+      throw new MalformedPacketException("Invalid frame length " + length);
+    }
+    byte[] frame = new byte[length];
+    in.readFully(frame);
+    return decode(frame, 0, length);
+  }
+
+  /**
+   * decode the body of a frame, i.e. everything after the length prefix, and stamp the packet
+   * with when that was and how long it took
+   */
+  public static SOSPFPacket decode(byte[] frame, int offset, int length) throws IOException {
+    return decode(frame, offset, length, LsaFilter.NONE);
+  }
+
+  /**
+   * as above, leaving out the LSAs the filter knows
+   */
+  public static SOSPFPacket decode(byte[] frame, int offset, int length, LsaFilter filter) throws IOException {
+    long start = System.nanoTime();
+    SOSPFPacket packet = codec(frame[offset]).decode(frame, offset + 1, length - 1, filter);
+    packet.receivedNanos = System.nanoTime();
+    packet.decodeNanos = packet.receivedNanos - start;
+    return packet;
+  }
+}
@@ -15,7 +15,7 @@ public class SOSPFPacket implements Serializable {
   public String dstIP;
 
   //common header
-  public short sospfType; //0 - HELLO, 1 - LinkState Update
+  public short sospfType; //0 - HELLO, 1 - LinkState Update, 2 - LinkState Request, 3 - Database Description
   public String routerID;
 
   //used by HELLO message to identify the sender of the message
@@ -23,13 +23,26 @@ public class SOSPFPacket implements Serializable {
   //simulated IP address
   
   public String neighborID; //neighbor's simulated IP address
-  							//used by LSAUPDATE to check who has already received the LSUPDATE
   
+  //used by LSAUPDATE to check who has already received the LSUPDATE
+  public VisitedSet visited = null;
 
   public boolean originalTrigger;
   
   //used by LSAUPDATE
   public Vector<LSA> lsaArray = null;
+  //used by LSAUPDATE, changes to LSAs the receiver should already have
+  public Vector<LSADelta> deltaArray = null;
+  
+  //used by LSREQUEST, the routers whose full LSA the sender asks for
+  public Vector<String> lsaRequest = null;
+  
+  //used by DBDESCRIPTION, every LSA the sender has when the adjacency comes up
+  public Vector<LSAHeader> dbSummary = null;
+  
+  //set by PacketFrames.decode, never sent: System.nanoTime() once decoded and how long it took
+  public transient long receivedNanos = 0;
+  public transient long decodeNanos = 0;
   
   public SOSPFPacket(){ }
 
@@ -54,7 +67,7 @@ public class SOSPFPacket implements Serializable {
 	  System.out.println("orig Trigger " + originalTrigger);
 	  System.out.println("");*/
 	  
-	  return "\nsrcIP "+ srcIP + "\nrouterID " + routerID + "\norig Trigger " + originalTrigger + "\n";
+	  return "\nsrcIP "+ srcIP + "\nrouterID " + routerID + "\nvisited " + visited + "\norig Trigger " + originalTrigger + "\n";
   }
   
 }
@@ -0,0 +1,119 @@
+package socs.network.message;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * the routers an LSAUPDATE does not have to be forwarded to, because they already have its
+ * LSAs or are being sent them by someone else
+ * <p/>
+ * immutable; kept as a sorted array of the routers' simulated IPs, whatever their format, so a
+ * lookup is a binary search over at most MAX_SIZE strings. The set is bounded: when it would
+ * grow past MAX_SIZE the routers added last win. Leaving a router out only costs a redundant
+ * LSAUPDATE, which the receiver drops by sequence number.
+ */
+public final class VisitedSet implements Serializable {
+
+  public static final int MAX_SIZE = 64;
+
+  public static final VisitedSet EMPTY = new VisitedSet(new String[0]);
+
+  // ascending and without duplicates
+  private final String[] routers;
+
+  private VisitedSet(String[] routers) {
+    this.routers = routers;
+  }
+
+  /**
+   * @throws IllegalArgumentException if there are more than MAX_SIZE distinct routers
+   */
+  public static VisitedSet of(Collection<String> ips) {
+    String[] routers = distinctSorted(ips.toArray(new String[0]), ips.size());
+    if (routers.length > MAX_SIZE) {
+      throw new IllegalArgumentException(routers.length + " visited routers, at most " + MAX_SIZE + " allowed");
+    }
+    return new VisitedSet(routers);
+  }
+
+  public boolean contains(String ip) {
+    return Arrays.binarySearch(routers, ip) >= 0;
+  }
+
+  public VisitedSet plus(String ip) {
+    return plus(Arrays.asList(ip));
+  }
+
+  /**
+   * @return this set with the given routers added, dropping routers of this set if there are
+   *         more than MAX_SIZE in total
+   */
+  public VisitedSet plus(Collection<String> ips) {
+    String[] added = distinctSorted(ips.toArray(new String[0]), ips.size());
+
+    String[] merged = new String[routers.length + added.length];
+    int m = 0;
+    for (String r : added) {
+      if (m == MAX_SIZE) break;
+      merged[m++] = r;
+    }
+    for (String r : routers) {
+      if (m == MAX_SIZE) break;
+      if (Arrays.binarySearch(added, r) < 0) merged[m++] = r;
+    }
+    return new VisitedSet(distinctSorted(merged, m));
+  }
+
+  /**
+   * @return the routers in both sets
+   */
+  public VisitedSet retainAll(VisitedSet other) {
+    String[] common = new String[Math.min(routers.length, other.routers.length)];
+    int n = 0;
+    int i = 0;
+    int j = 0;
+    while (i < routers.length && j < other.routers.length) {
+      int c = routers[i].compareTo(other.routers[j]);
+      if (c < 0) i++;
+      else if (c > 0) j++;
+      else {
+        common[n++] = routers[i];
+        i++;
+        j++;
+      }
+    }
+    return new VisitedSet(Arrays.copyOf(common, n));
+  }
+
+  public int size() {
+    return routers.length;
+  }
+
+  /**
+   * @return the routers in ascending order
+   */
+  public String[] toArray() {
+    return routers.clone();
+  }
+
+  private static String[] distinctSorted(String[] values, int n) {
+    String[] sorted = Arrays.copyOf(values, n);
+    Arrays.sort(sorted);
+    int d = 0;
+    for (int i = 0; i < n; i++) {
+      if (d == 0 || !sorted[d - 1].equals(sorted[i])) sorted[d++] = sorted[i];
+    }
+    return Arrays.copyOf(sorted, d);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (String r : routers) {
+      if (sb.length() > 0) sb.append(',');
+      sb.append(r);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,18 @@
+package socs.network.node;
+
+/**
+ * the wall clock the timing decisions read, so tests can move time forward themselves
+ */
+interface Clock {
+
+  Clock SYSTEM = new Clock() {
+    public long millis() {
+      return System.currentTimeMillis();
+    }
+  };
+
+  /**
+   * @return the current time in ms, like System.currentTimeMillis()
+   */
+  long millis();
+}
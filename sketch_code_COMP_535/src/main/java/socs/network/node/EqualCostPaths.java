@@ -0,0 +1,241 @@
+package socs.network.node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * every shortest path of a ShortestPathTree instead of the one its parent array keeps: the
+ * equal-cost predecessors of each router and, per destination, the root's neighbors that start
+ * a shortest path to it with the number of shortest paths through each
+ * <p/>
+ * derived from the tree's distances, a link u -> v is on a shortest path when
+ * distance[u] + weight == distance[v], so neither the full nor the incremental SPF run has to
+ * keep track of ties. A link of weight 0 only counts if it is the tree link, which keeps the
+ * predecessors free of cycles.
+ */
+class EqualCostPaths {
+
+  /**
+   * a neighbor of the root to send traffic for a destination to
+   */
+  static final class NextHop {
+    final String neighborIP;
+    // shortest paths to the destination starting with this neighbor, Long.MAX_VALUE if more
+    final long paths;
+
+    NextHop(String neighborIP, long paths) {
+      this.neighborIP = neighborIP;
+      this.paths = paths;
+    }
+  }
+
+  private final ShortestPathTree tree;
+  // the equal-cost predecessors of v are preds[predOffsets[v] .. predOffsets[v + 1])
+  private final int[] predOffsets;
+  private final int[] preds;
+  // the root's neighbors that start some shortest path, firstHop[v] is v's position among them
+  private final int[] firstHops;
+  private final int[] firstHop;
+  // the shortest paths to v start with firstHops[hopsOf[v][j]] for pathsOf[v][j] of them,
+  // saturating; only the first hops v actually has are kept, null for the root and unreachable
+  private final int[][] hopsOf;
+  private final long[][] pathsOf;
+
+  EqualCostPaths(ShortestPathTree tree) {
+    this.tree = tree;
+    SpfGraph graph = tree.graph;
+    int[] distance = tree.distance;
+    int n = distance.length;
+
+    // counted first, then filled in, as a compressed sparse row like the graph
+    predOffsets = new int[n + 1];
+    for (int u = 0; u < n; u++) {
+      for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+        if (onShortestPath(u, e)) predOffsets[graph.targets[e] + 1]++;
+      }
+    }
+    for (int v = 0; v < n; v++) predOffsets[v + 1] += predOffsets[v];
+    preds = new int[predOffsets[n]];
+    int[] fill = new int[n];
+    for (int u = 0; u < n; u++) {
+      for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+        if (!onShortestPath(u, e)) continue;
+        int v = graph.targets[e];
+        preds[predOffsets[v] + fill[v]++] = u;
+      }
+    }
+
+    firstHop = new int[n];
+    int hopCount = 0;
+    for (int v = 0; v < n; v++) {
+      firstHop[v] = hasPredecessor(v, tree.root) ? hopCount++ : ShortestPathTree.NONE;
+    }
+    firstHops = new int[hopCount];
+    for (int v = 0; v < n; v++) {
+      if (firstHop[v] != ShortestPathTree.NONE) firstHops[firstHop[v]] = v;
+    }
+
+    // the predecessors' counts are summed up in sum, touched lists the first hops that are set
+    hopsOf = new int[n][];
+    pathsOf = new long[n][];
+    long[] sum = new long[hopCount];
+    int[] touched = new int[hopCount];
+    for (int v : predecessorsFirst()) {
+      if (v == tree.root) continue;
+      int count = 0;
+      for (int i = predOffsets[v]; i < predOffsets[v + 1]; i++) {
+        int u = preds[i];
+        if (u == tree.root) {
+          if (sum[firstHop[v]] == 0) touched[count++] = firstHop[v];
+          sum[firstHop[v]] = add(sum[firstHop[v]], 1);
+          continue;
+        }
+        for (int j = 0; j < hopsOf[u].length; j++) {
+          int k = hopsOf[u][j];
+          if (sum[k] == 0) touched[count++] = k;
+          sum[k] = add(sum[k], pathsOf[u][j]);
+        }
+      }
+      Arrays.sort(touched, 0, count);
+      hopsOf[v] = Arrays.copyOf(touched, count);
+      pathsOf[v] = new long[count];
+      for (int j = 0; j < count; j++) {
+        pathsOf[v][j] = sum[touched[j]];
+        sum[touched[j]] = 0;
+      }
+    }
+  }
+
+  /**
+   * @return the neighbors of the root a shortest path to the destination starts with, empty if
+   *         it cannot be reached or is the root
+   */
+  List<NextHop> nextHops(String destinationIP) {
+    int v = tree.graph.indexOf(destinationIP);
+    if (v == -1 || !tree.isReachable(destinationIP) || hopsOf[v] == null) {
+      return Collections.emptyList();
+    }
+    List<NextHop> hops = new ArrayList<NextHop>(hopsOf[v].length);
+    for (int j = 0; j < hopsOf[v].length; j++) {
+      hops.add(new NextHop(tree.graph.idOf(firstHops[hopsOf[v][j]]), pathsOf[v][j]));
+    }
+    return hops;
+  }
+
+  /**
+   * @return the number of shortest paths to the destination, Long.MAX_VALUE if more, 0 if it
+   *         cannot be reached
+   */
+  long pathCount(String destinationIP) {
+    long count = 0;
+    for (NextHop hop : nextHops(destinationIP)) count = add(count, hop.paths);
+    return count;
+  }
+
+  /**
+   * at most limit of the shortest paths to the destination, formatted like
+   * ShortestPathTree.pathTo; the paths are walked one at a time, so memory stays in proportion
+   * to limit and not to the number of paths
+   */
+  List<String> pathsTo(String destinationIP, int limit) {
+    List<String> result = new ArrayList<String>();
+    if (!tree.isReachable(destinationIP)) return result;
+    int n = tree.distance.length;
+
+    // the path from the destination back to the root walked so far, and the next predecessor
+    // to try at every step
+    int[] node = new int[n + 1];
+    int[] next = new int[n + 1];
+    node[0] = tree.graph.indexOf(destinationIP);
+    next[0] = predOffsets[node[0]];
+    int depth = 1;
+    while (depth > 0 && result.size() < limit) {
+      int v = node[depth - 1];
+      if (v == tree.root) {
+        result.add(format(node, depth));
+        depth--;
+      } else if (next[depth - 1] == predOffsets[v + 1]) {
+        depth--;
+      } else {
+        int u = preds[next[depth - 1]++];
+        node[depth] = u;
+        next[depth] = predOffsets[u];
+        depth++;
+      }
+    }
+    return result;
+  }
+
+  // the walk node[depth - 1] (the root) .. node[0] (the destination)
+  private String format(int[] node, int depth) {
+    StringBuilder sb = new StringBuilder(tree.graph.idOf(node[depth - 1]));
+    for (int i = depth - 2; i >= 0; i--) {
+      sb.append(" ->(").append(tree.distance[node[i]] - tree.distance[node[i + 1]]).append(") ")
+              .append(tree.graph.idOf(node[i]));
+    }
+    return sb.toString();
+  }
+
+  // whether the link e of u is a shortest path link, counting parallel links between the same
+  // two routers once
+  private boolean onShortestPath(int u, int e) {
+    SpfGraph graph = tree.graph;
+    int[] distance = tree.distance;
+    int v = graph.targets[e];
+    int w = graph.weights[e];
+    if (v == tree.root || distance[u] == ShortestPathTree.UNREACHABLE) return false;
+    if ((long) distance[u] + w != distance[v]) return false;
+    if (w == 0 && tree.parent[v] != u) return false;
+    for (int f = graph.offsets[u]; f < e; f++) {
+      if (graph.targets[f] == v && graph.weights[f] == w) return false;
+    }
+    return true;
+  }
+
+  private boolean hasPredecessor(int v, int u) {
+    for (int i = predOffsets[v]; i < predOffsets[v + 1]; i++) {
+      if (preds[i] == u) return true;
+    }
+    return false;
+  }
+
+  // every router after all of its predecessors, by a depth first walk along the predecessors
+  private int[] predecessorsFirst() {
+    int n = tree.distance.length;
+    int[] order = new int[n];
+    int count = 0;
+    boolean[] seen = new boolean[n];
+    int[] stack = new int[n];
+    int[] next = new int[n];
+    for (int s = 0; s < n; s++) {
+      if (seen[s] || tree.distance[s] == ShortestPathTree.UNREACHABLE) continue;
+      seen[s] = true;
+      int top = 0;
+      stack[top] = s;
+      next[top] = predOffsets[s];
+      top++;
+      while (top > 0) {
+        int v = stack[top - 1];
+        if (next[top - 1] == predOffsets[v + 1]) {
+          order[count++] = v;
+          top--;
+          continue;
+        }
+        int u = preds[next[top - 1]++];
+        if (seen[u]) continue;
+        seen[u] = true;
+        stack[top] = u;
+        next[top] = predOffsets[u];
+        top++;
+      }
+    }
+    return count == n ? order : Arrays.copyOf(order, count);
+  }
+
+  private static long add(long a, long b) {
+    long sum = a + b;
+    return sum < 0 ? Long.MAX_VALUE : sum;
+  }
+}
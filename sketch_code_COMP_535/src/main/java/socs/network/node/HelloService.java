@@ -0,0 +1,110 @@
+package socs.network.node;
+
+import socs.network.message.SOSPFPacket;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * periodic HELLO datagrams telling whether the TWO_WAY neighbors are still there
+ * <p/>
+ * once a link is TWO_WAY a HELLO datagram goes out over it every helloInterval milliseconds; a
+ * neighbor nothing was heard from for the link's helloDeadInterval is reported lost. The
+ * HELLOs go out as the transport's datagrams, a lost datagram is just a missed HELLO. The
+ * handshake itself stays on the connections, see Router.ClientMsgHandler.
+ */
+class HelloService implements PacketHandler {
+
+  // how often the links are checked for due HELLOs and silent neighbors
+  static final long TICK = 50;
+
+  interface Listener {
+    /**
+     * nothing was heard from the neighbor at the other end of the link for its dead interval,
+     * called on the timer thread
+     */
+    void neighborLost(Link link);
+  }
+
+  private final RouterDescription rd;
+  private final NeighborTable ports;
+  private final Transport transport;
+  private final ScheduledExecutorService timers;
+  private final Listener listener;
+  private final RouterMetrics metrics;
+  private ScheduledFuture<?> ticker = null;
+
+  HelloService(RouterDescription rd, NeighborTable ports, Transport transport, ScheduledExecutorService timers,
+               Listener listener, RouterMetrics metrics) {
+    this.rd = rd;
+    this.ports = ports;
+    this.transport = transport;
+    this.timers = timers;
+    this.listener = listener;
+    this.metrics = metrics;
+  }
+
+  void start() {
+    ticker = timers.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        tick();
+      }
+    }, TICK, TICK, TimeUnit.MILLISECONDS);
+  }
+
+  void close() {
+    if (ticker != null) ticker.cancel(false);
+  }
+
+  /**
+   * a datagram arrived, HELLOs of TWO_WAY neighbors keep them alive
+   */
+  public void handle(SOSPFPacket packet) {
+    metrics.decoded(packet.decodeNanos);
+    if (packet.sospfType != 0) return;
+    Link link = ports.find(packet.srcIP);
+    if (link == null) return;
+    metrics.helloReceived(packet.srcIP);
+    if (link.router2.status == RouterStatus.TWO_WAY) heard(link);
+  }
+
+  /**
+   * anything at all arrived from the neighbor, it counts as a HELLO
+   */
+  static void heard(Link link) {
+    link.lastHeard = System.currentTimeMillis();
+  }
+
+  private void tick() {
+    long now = System.currentTimeMillis();
+    for (Link l : ports.links()) {
+      if (l.router2.status != RouterStatus.TWO_WAY) continue;
+      if (now - l.lastHeard >= l.helloDeadInterval) {
+        try {
+          listener.neighborLost(l);
+        } catch (RuntimeException e) {
+          // a bug in handling one neighbor must not stop the HELLOs to the others
+          e.printStackTrace();
+        }
+        continue;
+      }
+      if (now >= l.nextHello) {
+        send(l);
+        l.nextHello = now + l.helloInterval;
+      }
+    }
+  }
+
+  private void send(Link l) {
+    SOSPFPacket hello = new SOSPFPacket((short) 0, rd.simulatedIPAddress, l.router2.simulatedIPAddress,
+            rd.simulatedIPAddress, l.router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
+    try {
+      transport.sendDatagram(l.router2.processIPAddress, l.router2.processPortNumber, hello);
+      metrics.helloSent(l.router2.simulatedIPAddress);
+    } catch (IOException e) {
+      // a missed HELLO, the dead interval decides whether the neighbor is gone
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package socs.network.node;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * durations in power of two buckets of nanoseconds, recorded without locks
+ * <p/>
+ * a percentile is only known up to its bucket, so it is reported as the bucket's upper bound:
+ * at most twice the real value
+ */
+class LatencyHistogram {
+
+  // bucket i holds durations below 2^i nanoseconds and at least 2^(i-1)
+  private final AtomicLongArray buckets = new AtomicLongArray(64);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+    buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+    count.increment();
+    total.add(nanos);
+    long m = max.get();
+    while (nanos > m && !max.compareAndSet(m, nanos)) m = max.get();
+  }
+
+  long count() {
+    return count.sum();
+  }
+
+  double meanMicros() {
+    long n = count.sum();
+    return n == 0 ? 0 : total.sum() / 1000.0 / n;
+  }
+
+  double maxMicros() {
+    return max.get() / 1000.0;
+  }
+
+  /**
+   * @return the upper bound of the bucket holding the p-th percentile, 0 if nothing was recorded
+   */
+  double percentileMicros(double p) {
+    long n = 0;
+    for (int i = 0; i < buckets.length(); i++) n += buckets.get(i);
+    long rank = (long) Math.ceil(n * p / 100);
+    long seen = 0;
+    for (int i = 0; i < buckets.length() && n > 0; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) return Math.min((double) (1L << Math.min(i, 62)), max.get()) / 1000.0;
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("n=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus",
+            count(), meanMicros(), percentileMicros(50), percentileMicros(99), maxMicros());
+  }
+}
@@ -5,6 +5,23 @@ public class Link {
   RouterDescription router1;
   RouterDescription router2;
   public short weight;
+  // false while the weight is unknown, i.e. the link was created by a HELLO from the neighbor
+  // and the weight still has to be learned from the neighbor's LSA
+  boolean weightKnown;
+  // persistent connection carrying every packet this router sends over the link
+  Transport.Connection connection;
+  // sends waiting for the connection, drained in order
+  NeighborSendQueue sendQueue;
+  // port the link occupies in the router's NeighborTable
+  int port = -1;
+  // milliseconds between two UDP HELLOs over the link, and without hearing anything from the
+  // neighbor before it is considered lost, see HelloService
+  long helloInterval;
+  long helloDeadInterval;
+  // last time anything arrived from the neighbor
+  volatile long lastHeard;
+  // when the next HELLO is due, only used by the HelloService's timer
+  long nextHello = 0;
 
   public Link(RouterDescription r1, RouterDescription r2) {
     router1 = r1;
@@ -15,5 +32,6 @@ public class Link {
 	    router1 = r1;
 	    router2 = r2;
 	    weight = w;
+	    weightKnown = true;
 	  }
 }
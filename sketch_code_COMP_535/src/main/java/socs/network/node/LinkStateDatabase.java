@@ -4,135 +4,419 @@ import socs.network.message.LSA;
 import socs.network.message.LinkDescription;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class LinkStateDatabase {
 
-  //linkID => LSAInstance
-  HashMap<String, LSA> _store = new HashMap<String, LSA>();
+  /**
+   * the whole store at one version, never modified once published
+   */
+  static final class Snapshot {
+    final long version;
+    //linkID => LSAInstance
+    final Map<String, LSA> lsas;
+    // linkID => the links of its LSA as interned router indices, what SPF runs on
+    final Map<String, SpfGraph.Row> rows;
+    // numbers the routers in rows, the router itself first
+    final RouterIdTable ids;
+
+    Snapshot(long version, Map<String, LSA> lsas, Map<String, SpfGraph.Row> rows, RouterIdTable ids) {
+      this.version = version;
+      this.lsas = lsas;
+      this.rows = rows;
+      this.ids = ids;
+    }
+
+    LSA get(String linkStateID) {
+      return lsas.get(linkStateID);
+    }
+
+    Collection<LSA> values() {
+      return lsas.values();
+    }
+
+    // copy of this snapshot with the LSA of origin replaced, or removed if lsa is null
+    Snapshot with(String origin, LSA lsa, SpfGraph.Row row) {
+      HashMap<String, LSA> lsaCopy = new HashMap<String, LSA>(lsas);
+      HashMap<String, SpfGraph.Row> rowCopy = new HashMap<String, SpfGraph.Row>(rows);
+      if (lsa == null) {
+        lsaCopy.remove(origin);
+        rowCopy.remove(origin);
+      } else {
+        lsaCopy.put(origin, lsa);
+        rowCopy.put(origin, row);
+      }
+      return new Snapshot(version + 1, Collections.unmodifiableMap(lsaCopy),
+              Collections.unmodifiableMap(rowCopy), ids);
+    }
+  }
+
+  /**
+   * computes the new LSA of one origin from its current one, returning current leaves it unchanged
+   */
+  private interface Update {
+    LSA apply(LSA current);
+  }
+
+  // readers take whatever snapshot is current without locking, writers replace it by
+  // compare-and-set, see update()
+  private final AtomicReference<Snapshot> _store;
+
+  /**
+   * shortest path tree together with the snapshot it was computed for
+   */
+  static final class SpfResult {
+    final Snapshot snapshot;
+    final ShortestPathTree tree;
+
+    SpfResult(Snapshot snapshot, ShortestPathTree tree) {
+      this.snapshot = snapshot;
+      this.tree = tree;
+    }
+  }
+
+  private final AtomicReference<SpfResult> spf = new AtomicReference<SpfResult>();
+  // what routing uses, replaced as a whole by the scheduled SPF runs, see scheduleSpf()
+  private volatile SpfResult routes = null;
+  private volatile SpfScheduler spfScheduler = null;
+  // SPF runs are serialized so that each snapshot gets its tree computed once
+  private final Object spfLock = new Object();
+
+  // with at most this many changed origins the cached tree is patched instead of recomputed
+  private static final int MAX_INCREMENTAL_CHANGES = 4;
+  private volatile boolean incrementalSpf = true;
+
+  // a snapshot's router IDs are numbered again once its table has grown by this many since it
+  // was filled and either doubled or holds more than twice as many IDs as there are LSAs
+  private static final int MIN_STALE_IDS = 64;
 
   private RouterDescription rd = null;
 
+  // SPF runs are timed here
+  private final RouterMetrics metrics;
+  // told about every LSA installed or removed, null if LSAs do not age
+  private volatile LsaAging aging = null;
+
   public LinkStateDatabase(RouterDescription routerDescription) {
+    this(routerDescription, new RouterMetrics());
+  }
+
+  LinkStateDatabase(RouterDescription routerDescription, RouterMetrics metrics) {
     rd = routerDescription;
+    this.metrics = metrics;
     LSA l = initLinkStateDatabase();
-    _store.put(l.linkStateID, l);
+    RouterIdTable ids = new RouterIdTable();
+    ids.intern(rd.simulatedIPAddress);
+    _store = new AtomicReference<Snapshot>(new Snapshot(0, Collections.singletonMap(l.linkStateID, l),
+            Collections.singletonMap(l.linkStateID, SpfGraph.Row.of(l, ids)), ids));
+    ids.markLive();
   }
 
   /**
    * output the shortest path from this router to the destination with the given IP address
+   *
+   * @return null if the destination cannot be reached
    */
   String getShortestPath(String destinationIP) {
-    //TODO: fill the implementation here
-	ArrayList<String> checked = new ArrayList<String>();
-	ArrayList<String> unvisited = new ArrayList<String>();
-	HashMap<String, NodeInfo> nodes = new HashMap<String, NodeInfo>();
-	
-	// add current rd to nodes list and checked list
-	nodes.put(rd.simulatedIPAddress, new NodeInfo(0, null));
-	checked.add(rd.simulatedIPAddress);
-	
-	// add neighbors of current router to unvisited list and initialize them in nodes list
-	LSA current = _store.get(rd.simulatedIPAddress);
-	for (LinkDescription l:current.links) {
-		// skip itself
-		if (l.linkID.equals(rd.simulatedIPAddress)) continue;
-		unvisited.add(l.linkID);
-		nodes.put(l.linkID, new NodeInfo(l.tosMetrics, rd.simulatedIPAddress));
-	}
-	
-	while (unvisited.size()>0) {
-		String tocheck = getClosestNode(unvisited, nodes);// need sort
-		
-		unvisited.remove(tocheck);
-		// if already checked, just skip
-		if (checked.contains(tocheck)) continue;
-		current = _store.get(tocheck);
-		
-		if(current != null){
-			for (LinkDescription ld: current.links) {
-				// if this node has no distance yet (distance is infinity), add distance and put into unvisited queue
-				if (!nodes.containsKey(ld.linkID) && !ld.linkID.equals(rd.simulatedIPAddress)) {
-					nodes.put(ld.linkID, new NodeInfo(nodes.get(tocheck).distance+ld.tosMetrics, tocheck));
-					unvisited.add(ld.linkID);
-				}
-				// else update the distance only if the distance calculated via this ld is lower
-				else if (nodes.get(ld.linkID).distance>nodes.get(tocheck).distance+ld.tosMetrics) 
-					nodes.replace(ld.linkID, new NodeInfo(nodes.get(tocheck).distance+ld.tosMetrics,tocheck));
-			}
-		}
-		
-		
-		checked.add(tocheck);
-		
-	}
-	
-	// print out the shortest path
-	return createOutputString(destinationIP, destinationIP, nodes);
-  }
-  
-  
-  private String createOutputString(String destinationIP, String prevIP, HashMap<String, NodeInfo> nodes){
-		String result = destinationIP;
-		NodeInfo backtrackNode = nodes.get(destinationIP);
-		
-		while (!prevIP.equals(rd.simulatedIPAddress)) {
-			prevIP = backtrackNode.prev;
-			int linkWeight = backtrackNode.distance - nodes.get(prevIP).distance;
-			result = new String(prevIP + " ->(" + linkWeight + ") " + result);
-
-			backtrackNode = nodes.get(prevIP);
-		}
-		
-		return result;
-	}
-  
-  
-  // a helper class for getShortestPath method
-  class NodeInfo {
-		int distance;
-		String prev;
-
-		public NodeInfo(int distance, String prev){
-			this.distance = distance;
-			this.prev = prev;
-		}
-	}
-
-  // a helper method to return the unvisited node to be processed next 
-  public String getClosestNode(ArrayList<String> checking, HashMap<String, NodeInfo> info) {
-	  String toProcess = "";
-	  int dis = Integer.MAX_VALUE;
-	  for (String checkS: checking) {
-		  NodeInfo tempNode = info.get(checkS);
-		  if (tempNode.distance<dis && tempNode.distance!=0) {
-			  toProcess = new String(checkS);
-			  dis = tempNode.distance;
-		  }
-	  }
-	  return toProcess;
-  }
-  
+    return shortestPathTree().pathTo(destinationIP);
+  }
+
+  /**
+   * every equal-cost shortest path in the current database, not only the one getShortestPath
+   * picks
+   */
+  EqualCostPaths equalCostPaths() {
+    return shortestPathTree().equalCostPaths();
+  }
+
+  /**
+   * the routes of the last scheduled SPF run, at most one new set per hold time however often
+   * the database changes; computed for the current database when SPF is not scheduled
+   */
+  SpfResult routes() {
+    SpfResult r = routes;
+    return r != null ? r : spfResult();
+  }
+
+  /**
+   * from now on recompute the routes after changes, as SpfScheduler paces it, on the executor
+   */
+  void scheduleSpf(ScheduledExecutorService executor, long initialDelay, long holdTime, long maxHoldTime) {
+    spfScheduler = new SpfScheduler(executor, initialDelay, holdTime, maxHoldTime, new Runnable() {
+      public void run() {
+        routes = spfResult();
+      }
+    });
+    routes = spfResult();
+  }
+
+  /**
+   * @return the hold time of the SPF scheduler in ms, 0 if SPF is not scheduled
+   */
+  long spfHoldTime() {
+    SpfScheduler s = spfScheduler;
+    return s == null ? 0 : s.holdTime();
+  }
+
+  private ShortestPathTree shortestPathTree() {
+    return spfResult().tree;
+  }
+
+  // the tree is computed at most once per snapshot, later queries only walk the parent array
+  private SpfResult spfResult() {
+    SpfResult cached = spf.get();
+    if (cached != null && cached.snapshot == _store.get()) return cached;
+
+    synchronized (spfLock) {
+      Snapshot snapshot = _store.get();
+      cached = spf.get();
+      if (cached != null && cached.snapshot == snapshot) return cached;
+
+      long start = System.nanoTime();
+      ShortestPathTree tree = null;
+      // a tree can only be patched against a snapshot numbering the routers the same way
+      List<String> changed = cached == null || !incrementalSpf || cached.snapshot.ids != snapshot.ids
+              ? null : changedOrigins(cached.snapshot, snapshot);
+      if (changed != null) {
+        tree = cached.tree;
+        for (String origin : changed) {
+          int index = snapshot.ids.indexOf(origin);
+          SpfGraph graph = tree.graph.withRow(index, snapshot.rows.get(origin));
+          tree = SpfEngine.update(tree, graph, index);
+          if (tree == null) break;
+        }
+      }
+      if (tree == null) {
+        tree = SpfEngine.compute(SpfGraph.build(snapshot.rows.values(), snapshot.ids), 0);
+      }
+
+      metrics.spfRun(System.nanoTime() - start);
+      SpfResult result = new SpfResult(snapshot, tree);
+      spf.set(result);
+      return result;
+    }
+  }
+
+  /**
+   * @return the origins whose LSA differs between the two snapshots, null if there are more
+   *         than MAX_INCREMENTAL_CHANGES of them
+   */
+  private static List<String> changedOrigins(Snapshot from, Snapshot to) {
+    ArrayList<String> changed = new ArrayList<String>();
+    // LSAs are immutable, a changed one is a different instance
+    for (Map.Entry<String, LSA> e : to.lsas.entrySet()) {
+      if (from.get(e.getKey()) != e.getValue()) changed.add(e.getKey());
+      if (changed.size() > MAX_INCREMENTAL_CHANGES) return null;
+    }
+    for (String origin : from.lsas.keySet()) {
+      if (!to.lsas.containsKey(origin)) changed.add(origin);
+      if (changed.size() > MAX_INCREMENTAL_CHANGES) return null;
+    }
+    return changed;
+  }
+
+  /**
+   * age the LSAs from now on, starting with the ones already installed
+   */
+  void setAging(LsaAging aging) {
+    this.aging = aging;
+    for (LSA lsa : _store.get().values()) aging.installed(lsa.linkStateID, lsa);
+  }
+
+  /**
+   * when enabled, a change to a few LSAs patches the cached tree instead of recomputing it
+   */
+  void setIncrementalSpf(boolean enabled) {
+    incrementalSpf = enabled;
+  }
+
+  /**
+   * a consistent view of the whole store, unaffected by later writes
+   */
+  Snapshot snapshot() {
+    return _store.get();
+  }
+
+  long version() {
+    return _store.get().version;
+  }
+
+  LSA get(String linkStateID) {
+    return _store.get().get(linkStateID);
+  }
+
+  boolean contains(String linkStateID) {
+    return _store.get().lsas.containsKey(linkStateID);
+  }
+
+  ArrayList<LSA> values() {
+    return new ArrayList<LSA>(_store.get().values());
+  }
+
+  /**
+   * replace the LSA of origin with update.apply(current) by compare-and-set on the snapshot;
+   * when another writer published first, the update is applied again to the origin's LSA in
+   * the newer snapshot
+   * <p/>
+   * the router IDs of the new LSA are interned here, before it becomes visible, and the
+   * snapshot's IDs are numbered again when the table has gone stale
+   *
+   * @return true if the LSA changed
+   */
+  private boolean update(String origin, Update update) {
+    while (true) {
+      Snapshot current = _store.get();
+      LSA lsa = current.get(origin);
+      LSA next = update.apply(lsa);
+      if (next == lsa) return false;
+      SpfGraph.Row row = next == null ? null : SpfGraph.Row.of(next, current.ids);
+      if (_store.compareAndSet(current, renumberIfStale(current.with(origin, next, row)))) {
+        // whatever is there by now, a writer that published after us may have been quicker
+        LsaAging a = aging;
+        if (a != null) a.installed(origin, _store.get().get(origin));
+        SpfScheduler s = spfScheduler;
+        if (s != null) s.changed();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * IDs stay in a table after the last LSA mentioning them is gone; once the table has drifted
+   * far from what the LSAs mention, the snapshot gets a new table with the live IDs only and
+   * rows numbered by it. Older snapshots and the trees computed for them keep the old table.
+   *
+   * @return the snapshot itself if its table is still good enough
+   */
+  private Snapshot renumberIfStale(Snapshot snapshot) {
+    RouterIdTable stale = snapshot.ids;
+    int grown = stale.grownSinceLive();
+    if (grown < MIN_STALE_IDS) return snapshot;
+    if (grown < stale.size() - grown && stale.size() <= 2 * snapshot.lsas.size()) return snapshot;
+
+    RouterIdTable ids = new RouterIdTable();
+    ids.intern(rd.simulatedIPAddress);
+    HashMap<String, SpfGraph.Row> rows = new HashMap<String, SpfGraph.Row>();
+    for (LSA lsa : snapshot.values()) rows.put(lsa.linkStateID, SpfGraph.Row.of(lsa, ids));
+    ids.markLive();
+    return new Snapshot(snapshot.version, snapshot.lsas, Collections.unmodifiableMap(rows), ids);
+  }
+
+  /**
+   * add or replace the LSA originated by lsa.linkStateID
+   */
+  void install(final LSA lsa) {
+    update(lsa.linkStateID, new Update() {
+      public LSA apply(LSA current) {
+        return lsa;
+      }
+    });
+  }
+
+  /**
+   * install the LSA only if there is no copy yet or the stored copy is older
+   *
+   * @return true if the LSA was installed
+   */
+  boolean installIfNewer(final LSA lsa) {
+    return update(lsa.linkStateID, new Update() {
+      public LSA apply(LSA current) {
+        if (current != null && current.lsaSeqNumber >= lsa.lsaSeqNumber) return current;
+        return lsa;
+      }
+    });
+  }
+
+  void remove(String linkStateID) {
+    update(linkStateID, new Update() {
+      public LSA apply(LSA current) {
+        return null;
+      }
+    });
+  }
+
+  void incrementSequence(String linkStateID) {
+    update(linkStateID, new Update() {
+      public LSA apply(LSA current) {
+        if (current == null) return null;
+        return current.withSeqNumber(current.lsaSeqNumber + 1);
+      }
+    });
+  }
+
+  /**
+   * add the link to the owner's LSA unless it already has a link to ld.linkID
+   *
+   * @return true if the link was added
+   */
+  boolean addLink(String owner, final LinkDescription ld) {
+    return update(owner, new Update() {
+      public LSA apply(LSA current) {
+        if (current == null || current.linkTo(ld.linkID) != null) return current;
+        ArrayList<LinkDescription> links = new ArrayList<LinkDescription>(current.links);
+        links.add(ld);
+        return current.withLinks(links);
+      }
+    });
+  }
+
+  /**
+   * @return true if the owner's LSA had a link to target
+   */
+  boolean removeLink(String owner, final String target) {
+    return update(owner, new Update() {
+      public LSA apply(LSA current) {
+        if (current == null) return null;
+        LinkDescription ld = current.linkTo(target);
+        if (ld == null) return current;
+        ArrayList<LinkDescription> links = new ArrayList<LinkDescription>(current.links);
+        links.remove(ld);
+        return current.withLinks(links);
+      }
+    });
+  }
+
+  void setLinkWeight(String owner, final String target, final int weight) {
+    update(owner, new Update() {
+      public LSA apply(LSA current) {
+        if (current == null) return null;
+        LinkDescription ld = current.linkTo(target);
+        if (ld == null || ld.tosMetrics == weight) return current;
+        ArrayList<LinkDescription> links = new ArrayList<LinkDescription>(current.links);
+        links.set(links.indexOf(ld), ld.withMetric(weight));
+        return current.withLinks(links);
+      }
+    });
+  }
+
+  /**
+   * drop every link of the owner's LSA except the one to itself
+   */
+  void removeAllLinks(String owner) {
+    update(owner, new Update() {
+      public LSA apply(LSA current) {
+        if (current == null || current.links.size() <= 1) return current;
+        return current.withLinks(current.links.subList(0, 1));
+      }
+    });
+  }
 
   //initialize the linkstate database by adding an entry about the router itself
   private LSA initLinkStateDatabase() {
-    LSA lsa = new LSA();
-    lsa.linkStateID = rd.simulatedIPAddress;
-    lsa.lsaSeqNumber = Integer.MIN_VALUE;
-    LinkDescription ld = new LinkDescription();
-    ld.linkID = rd.simulatedIPAddress;
-    ld.portNum = -1;
-    ld.tosMetrics = 0;
-    lsa.links.add(ld);
-    return lsa;
+    LinkDescription ld = new LinkDescription(rd.simulatedIPAddress, -1, 0);
+    return new LSA(rd.simulatedIPAddress, Integer.MIN_VALUE, Collections.singletonList(ld));
   }
 
 
   public String toString() {
     StringBuilder sb = new StringBuilder();
-    for (LSA lsa: _store.values()) {
+    for (LSA lsa: _store.get().values()) {
       sb.append(lsa.linkStateID).append("(" + lsa.lsaSeqNumber + ")").append(":\t");
       for (LinkDescription ld : lsa.links) {
         sb.append(ld.linkID).append(",").append(ld.portNum).append(",").
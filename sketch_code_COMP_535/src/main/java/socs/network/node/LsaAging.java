@@ -0,0 +1,128 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.SOSPFPacket;
+
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * ages the LSAs of the link state database: every LSA installed gets one timeout on the
+ * router's timer wheel, replacing the one of the instance before it
+ * <p/>
+ * our own LSA is due for a refresh refreshInterval seconds after it last changed, any other
+ * LSA reaches MaxAge maxAge seconds after it was originated, unless a newer instance arrived
+ * by then. An LSA at MaxAge is flushed from the database and flooded once more at MaxAge, so
+ * the other routers flush it too; the LSAs of routers that are gone do not pile up.
+ */
+class LsaAging {
+
+  interface Listener {
+    /**
+     * our own LSA went unchanged for the refresh interval
+     */
+    void refreshDue();
+
+    /**
+     * lsa, still the instance in the database, reached MaxAge
+     */
+    void maxAged(LSA lsa);
+  }
+
+  private static final class Entry {
+    final LSA lsa;
+    final long installed;
+    TimerWheel.Timeout timeout;
+
+    Entry(LSA lsa, long installed) {
+      this.lsa = lsa;
+      this.installed = installed;
+    }
+  }
+
+  private final String self;
+  final int refreshInterval;
+  final int maxAge;
+  private final TimerWheel wheel;
+  private final Listener listener;
+  private final Clock clock;
+  // origin => the installed instance and its timeout, one per LSA in the database
+  private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+  /**
+   * @param refreshInterval seconds
+   * @param maxAge seconds
+   */
+  LsaAging(String self, int refreshInterval, int maxAge, TimerWheel wheel, Listener listener) {
+    this(self, refreshInterval, maxAge, wheel, listener, Clock.SYSTEM);
+  }
+
+  LsaAging(String self, int refreshInterval, int maxAge, TimerWheel wheel, Listener listener, Clock clock) {
+    this.self = self;
+    this.refreshInterval = refreshInterval;
+    this.maxAge = maxAge;
+    this.wheel = wheel;
+    this.listener = listener;
+    this.clock = clock;
+  }
+
+  /**
+   * the LSA of origin in the database is now lsa, null if it was removed
+   */
+  synchronized void installed(String origin, final LSA lsa) {
+    Entry old = entries.get(origin);
+    if (old != null && old.lsa == lsa) return;
+    entries.remove(origin);
+    if (old != null) old.timeout.cancel();
+    if (lsa == null) return;
+
+    Entry e = new Entry(lsa, clock.millis());
+    if (origin.equals(self)) {
+      e.timeout = wheel.schedule(new Runnable() {
+        public void run() {
+          listener.refreshDue();
+        }
+      }, refreshInterval * 1000L);
+    } else {
+      e.timeout = wheel.schedule(new Runnable() {
+        public void run() {
+          listener.maxAged(lsa);
+        }
+      }, Math.max(0, maxAge - lsa.lsaAge) * 1000L);
+    }
+    entries.put(origin, e);
+  }
+
+  /**
+   * @return seconds since lsa was originated, as far as known here, at most maxAge
+   */
+  synchronized int ageOf(LSA lsa) {
+    Entry e = entries.get(lsa.linkStateID);
+    if (e == null || e.lsa != lsa) return lsa.lsaAge;
+    long age = lsa.lsaAge + (clock.millis() - e.installed) / 1000;
+    return (int) Math.min(maxAge, age);
+  }
+
+  /**
+   * @return lsa with its current age
+   */
+  LSA aged(LSA lsa) {
+    int age = ageOf(lsa);
+    return age == lsa.lsaAge ? lsa : lsa.withAge(age);
+  }
+
+  /**
+   * @return the packet, its LSAs with their current ages
+   */
+  SOSPFPacket aged(SOSPFPacket packet) {
+    if (packet.lsaArray == null) return packet;
+    Vector<LSA> lsas = new Vector<LSA>(packet.lsaArray.size());
+    for (LSA lsa : packet.lsaArray) lsas.add(aged(lsa));
+    packet.lsaArray = lsas;
+    return packet;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+}
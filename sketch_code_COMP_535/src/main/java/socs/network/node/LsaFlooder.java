@@ -0,0 +1,168 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LSADelta;
+import socs.network.message.SOSPFPacket;
+import socs.network.message.VisitedSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * collects the LSAs waiting to be flooded to each neighbor and sends them together
+ * <p/>
+ * the first LSA queued for a neighbor opens a coalescing window; everything queued for that
+ * neighbor until the window closes goes out in a single LSAUPDATE, with only the newest
+ * instance of each router's LSA
+ * <p/>
+ * with deltas on, an LSA whose previous instance went to the same neighbor is sent as the
+ * difference to that instance when that is much smaller than the LSA
+ */
+class LsaFlooder {
+
+  /**
+   * hands a finished LSAUPDATE to whatever sends it to the neighbor
+   */
+  interface Sender {
+    Future<?> send(Link link, SOSPFPacket packet);
+  }
+
+  private final RouterDescription rd;
+  private final long window;
+  private final ScheduledExecutorService timers;
+  private final Sender sender;
+  private final boolean deltas;
+
+  // neighbor simulated IP => LSAs waiting for that neighbor
+  private final HashMap<String, Pending> pending = new HashMap<String, Pending>();
+  // neighbor simulated IP => origin => the last LSA of that origin sent to the neighbor
+  private final HashMap<String, HashMap<String, LSA>> sent = new HashMap<String, HashMap<String, LSA>>();
+
+  LsaFlooder(RouterDescription rd, long window, ScheduledExecutorService timers, Sender sender, boolean deltas) {
+    this.rd = rd;
+    this.window = window;
+    this.timers = timers;
+    this.sender = sender;
+    this.deltas = deltas;
+  }
+
+  /**
+   * queue the LSAs for the neighbor at the other end of the link
+   *
+   * @param visited the routers the receiver should not forward the LSAs to
+   */
+  synchronized void enqueue(Link link, List<LSA> lsas, VisitedSet visited) {
+    final String neighbor = link.router2.simulatedIPAddress;
+    Pending p = pending.get(neighbor);
+    if (p == null) {
+      p = new Pending(link);
+      pending.put(neighbor, p);
+      if (window > 0) {
+        timers.schedule(new Runnable() {
+          public void run() {
+            flush(neighbor);
+          }
+        }, window, TimeUnit.MILLISECONDS);
+      }
+    }
+    p.add(lsas, visited);
+    if (window <= 0) flush(neighbor);
+  }
+
+  /**
+   * send everything that is queued right away instead of waiting for the windows to close
+   *
+   * @return the sends started
+   */
+  List<Future<?>> flushAll() {
+    ArrayList<Pending> all;
+    synchronized (this) {
+      all = new ArrayList<Pending>(pending.values());
+      pending.clear();
+    }
+    ArrayList<Future<?>> sends = new ArrayList<Future<?>>();
+    for (Pending p : all) sends.add(send(p));
+    return sends;
+  }
+
+  /**
+   * the next LSAs of these origins go to the neighbor whole, for a neighbor that lost track of
+   * them or is about to lose the link it would ask again on
+   */
+  synchronized void sendWhole(String neighbor, Collection<String> origins) {
+    HashMap<String, LSA> last = sent.get(neighbor);
+    if (last != null) last.keySet().removeAll(origins);
+  }
+
+  // forget what is queued for a neighbor that is gone
+  synchronized void discard(String neighbor) {
+    pending.remove(neighbor);
+    sent.remove(neighbor);
+  }
+
+  private void flush(String neighbor) {
+    Pending p;
+    synchronized (this) {
+      p = pending.remove(neighbor);
+    }
+    if (p != null) send(p);
+  }
+
+  private Future<?> send(Pending p) {
+    String neighbor = p.link.router2.simulatedIPAddress;
+    SOSPFPacket packet = new SOSPFPacket((short) 1, rd.simulatedIPAddress, neighbor, rd.simulatedIPAddress,
+            neighbor, rd.processIPAddress, rd.processPortNumber);
+    packet.visited = p.visited;
+    packet.lsaArray = new Vector<LSA>();
+    if (deltas) {
+      packet.deltaArray = new Vector<LSADelta>();
+      synchronized (this) {
+        HashMap<String, LSA> last = sent.get(neighbor);
+        if (last == null) {
+          last = new HashMap<String, LSA>();
+          sent.put(neighbor, last);
+        }
+        for (LSA lsa : p.lsas.values()) {
+          LSA base = last.get(lsa.linkStateID);
+          LSADelta delta = base == null || base.lsaSeqNumber >= lsa.lsaSeqNumber ? null : LSADelta.between(base, lsa);
+          // a delta only pays off when it is well below the LSA it stands for
+          if (delta != null && delta.size() * 2 < lsa.links.size()) packet.deltaArray.add(delta);
+          else packet.lsaArray.add(lsa);
+          if (base == null || base.lsaSeqNumber < lsa.lsaSeqNumber) last.put(lsa.linkStateID, lsa);
+        }
+      }
+      if (packet.deltaArray.isEmpty()) packet.deltaArray = null;
+    } else {
+      packet.lsaArray.addAll(p.lsas.values());
+    }
+    return sender.send(p.link, packet);
+  }
+
+  private static class Pending {
+    final Link link;
+    // origin => newest LSA of that origin
+    final LinkedHashMap<String, LSA> lsas = new LinkedHashMap<String, LSA>();
+    // routers every coalesced update agreed not to be forwarded to, null before the first one
+    VisitedSet visited = null;
+
+    Pending(Link link) {
+      this.link = link;
+    }
+
+    void add(List<LSA> added, VisitedSet addedVisited) {
+      for (LSA lsa : added) {
+        LSA queued = lsas.get(lsa.linkStateID);
+        if (queued == null || queued.lsaSeqNumber <= lsa.lsaSeqNumber) lsas.put(lsa.linkStateID, lsa);
+      }
+      // the receiver may only skip a router that none of the coalesced updates wanted to reach
+      visited = visited == null ? addedVisited : visited.retainAll(addedVisited);
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * what a restarted router needs to come back warm: the link state database, the neighbors it
+ * had attached and the sequence number its own LSA may continue from
+ * <p/>
+ * file layout, big endian: magic, version, payload length, payload, CRC32 of the payload.
+ * The payload is the router's simulated IP, when it was written, the sequence number, the
+ * neighbors and the LSAs with their ages, strings as a u16 length and UTF-8 bytes. A file is
+ * written next to the target, forced to disk through a MappedByteBuffer and then moved over
+ * it, so a crash leaves the previous snapshot.
+ */
+class LsdbSnapshot {
+
+  static final int MAGIC = 0x534c5344;
+  static final short VERSION = 2;
+  private static final int HEADER = 4 + 2 + 4;
+
+  static final class Neighbor {
+    final String processIP;
+    final short processPort;
+    final String simulatedIP;
+    final short weight;
+    final long helloInterval;
+    final long helloDeadInterval;
+
+    Neighbor(String processIP, short processPort, String simulatedIP, short weight, long helloInterval,
+             long helloDeadInterval) {
+      this.processIP = processIP;
+      this.processPort = processPort;
+      this.simulatedIP = simulatedIP;
+      this.weight = weight;
+      this.helloInterval = helloInterval;
+      this.helloDeadInterval = helloDeadInterval;
+    }
+
+    static Neighbor of(Link l) {
+      return new Neighbor(l.router2.processIPAddress, l.router2.processPortNumber, l.router2.simulatedIPAddress,
+              l.weight, l.helloInterval, l.helloDeadInterval);
+    }
+  }
+
+  final String routerIP;
+  // System.currentTimeMillis() when the snapshot was taken
+  final long written;
+  // the first sequence number the router's own LSA may use after a restart
+  final int ownSequence;
+  final List<Neighbor> neighbors;
+  final List<LSA> lsas;
+
+  LsdbSnapshot(String routerIP, int ownSequence, Collection<Neighbor> neighbors, Collection<LSA> lsas) {
+    this(routerIP, System.currentTimeMillis(), ownSequence, neighbors, lsas);
+  }
+
+  private LsdbSnapshot(String routerIP, long written, int ownSequence, Collection<Neighbor> neighbors,
+                       Collection<LSA> lsas) {
+    this.routerIP = routerIP;
+    this.written = written;
+    this.ownSequence = ownSequence;
+    this.neighbors = Collections.unmodifiableList(new ArrayList<Neighbor>(neighbors));
+    this.lsas = Collections.unmodifiableList(new ArrayList<LSA>(lsas));
+  }
+
+  void write(File file) throws IOException {
+    int length = payloadLength();
+    File tmp = new File(file.getPath() + ".tmp");
+    RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+    try {
+      raf.setLength(HEADER + length + 4);
+      FileChannel channel = raf.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + length + 4);
+      buffer.putInt(MAGIC);
+      buffer.putShort(VERSION);
+      buffer.putInt(length);
+      writePayload(buffer);
+      buffer.putInt(crc(buffer, HEADER, length));
+      buffer.force();
+    } finally {
+      raf.close();
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return null if there is no snapshot file
+   * @throws IOException if the file is not a complete snapshot
+   */
+  static LsdbSnapshot read(File file) throws IOException {
+    if (!file.exists()) return null;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      long size = raf.length();
+      if (size < HEADER + 4) throw new IOException("Snapshot too short");
+      MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (buffer.getInt() != MAGIC) throw new IOException("Not a link state database snapshot");
+      short version = buffer.getShort();
+      if (version != VERSION) throw new IOException("Unknown snapshot version " + version);
+      int length = buffer.getInt();
+      if (length < 0 || HEADER + (long) length + 4 != size) throw new IOException("Truncated snapshot");
+      if (buffer.getInt(HEADER + length) != crc(buffer, HEADER, length)) {
+        throw new IOException("Snapshot checksum mismatch");
+      }
+      return readPayload(buffer);
+    } catch (RuntimeException e) {
+      // a buffer underflow or a negative count, whatever the checksum did not catch
+      throw new IOException("Corrupt snapshot: " + e);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private int payloadLength() {
+    int n = stringLength(routerIP) + 8 + 4 + 4;
+    for (Neighbor nb : neighbors) {
+      n += stringLength(nb.processIP) + 2 + stringLength(nb.simulatedIP) + 2 + 8 + 8;
+    }
+    n += 4;
+    for (LSA lsa : lsas) {
+      n += stringLength(lsa.linkStateID) + 4 + 4 + 4;
+      for (LinkDescription ld : lsa.links) n += stringLength(ld.linkID) + 4 + 4;
+    }
+    return n;
+  }
+
+  private void writePayload(ByteBuffer out) {
+    putString(out, routerIP);
+    out.putLong(written);
+    out.putInt(ownSequence);
+    out.putInt(neighbors.size());
+    for (Neighbor nb : neighbors) {
+      putString(out, nb.processIP);
+      out.putShort(nb.processPort);
+      putString(out, nb.simulatedIP);
+      out.putShort(nb.weight);
+      out.putLong(nb.helloInterval);
+      out.putLong(nb.helloDeadInterval);
+    }
+    out.putInt(lsas.size());
+    for (LSA lsa : lsas) {
+      putString(out, lsa.linkStateID);
+      out.putInt(lsa.lsaSeqNumber);
+      out.putInt(lsa.lsaAge);
+      out.putInt(lsa.links.size());
+      for (LinkDescription ld : lsa.links) {
+        putString(out, ld.linkID);
+        out.putInt(ld.portNum);
+        out.putInt(ld.tosMetrics);
+      }
+    }
+  }
+
+  private static LsdbSnapshot readPayload(ByteBuffer in) {
+    String routerIP = getString(in);
+    long written = in.getLong();
+    int ownSequence = in.getInt();
+    int neighborCount = in.getInt();
+    List<Neighbor> neighbors = new ArrayList<Neighbor>();
+    for (int i = 0; i < neighborCount; i++) {
+      neighbors.add(new Neighbor(getString(in), in.getShort(), getString(in), in.getShort(), in.getLong(),
+              in.getLong()));
+    }
+    int lsaCount = in.getInt();
+    List<LSA> lsas = new ArrayList<LSA>();
+    for (int i = 0; i < lsaCount; i++) {
+      String id = getString(in);
+      int seq = in.getInt();
+      int age = in.getInt();
+      int linkCount = in.getInt();
+      List<LinkDescription> links = new ArrayList<LinkDescription>();
+      for (int j = 0; j < linkCount; j++) links.add(new LinkDescription(getString(in), in.getInt(), in.getInt()));
+      lsas.add(new LSA(id, seq, age, links));
+    }
+    return new LsdbSnapshot(routerIP, written, ownSequence, neighbors, lsas);
+  }
+
+  private static int stringLength(String s) {
+    return 2 + s.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static void putString(ByteBuffer out, String s) {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.putShort((short) bytes.length);
+    out.put(bytes);
+  }
+
+  private static String getString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getShort() & 0xffff];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int crc(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer payload = buffer.duplicate();
+    payload.position(offset);
+    payload.limit(offset + length);
+    CRC32 crc = new CRC32();
+    byte[] chunk = new byte[8192];
+    while (payload.hasRemaining()) {
+      int n = Math.min(chunk.length, payload.remaining());
+      payload.get(chunk, 0, n);
+      crc.update(chunk, 0, n);
+    }
+    return (int) crc.getValue();
+  }
+}
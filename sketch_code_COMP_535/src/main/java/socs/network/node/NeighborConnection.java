@@ -0,0 +1,146 @@
+package socs.network.node;
+
+import socs.network.message.PacketCodec;
+import socs.network.message.PacketFrames;
+import socs.network.message.SOSPFPacket;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+
+/**
+ * the long-lived connection this router uses to send every packet (HELLO and LSUPDATE alike) to
+ * one neighbor
+ * <p/>
+ * a broken connection is re-established with exponential backoff and jitter; a send only fails,
+ * and the neighbor is only considered down, once sending has kept failing for deadInterval
+ * milliseconds
+ */
+class NeighborConnection implements Transport.Connection {
+
+  static final int CONNECT_TIMEOUT = 1000;
+  static final long INITIAL_BACKOFF = 50;
+  static final long MAX_BACKOFF = 2000;
+
+  private final String processIP;
+  private final short processPort;
+  private final PacketCodec codec;
+  private final long deadInterval;
+  private final Random jitter = new Random();
+
+  // socket is only replaced under the send monitor, but close() reads it without the monitor
+  private volatile Socket socket = null;
+  private DataOutputStream out = null;
+  private volatile boolean closed = false;
+  // a send backing off waits on this, so close() can cut the wait short
+  private final Object retry = new Object();
+
+  // start of the current run of failed attempts, -1 while the connection works
+  private long failingSince = -1;
+  private long backoff = INITIAL_BACKOFF;
+
+  NeighborConnection(String processIP, short processPort, PacketCodec codec, long deadInterval) {
+    this.processIP = processIP;
+    this.processPort = processPort;
+    this.codec = codec;
+    this.deadInterval = deadInterval;
+  }
+
+  /**
+   * write the packet, reconnecting as often as needed within the dead interval
+   *
+   * @throws IOException if attempts to reach the neighbor kept failing for deadInterval
+   *                     milliseconds or the connection was closed
+   */
+  public synchronized void send(SOSPFPacket packet) throws IOException {
+    byte[] frame = PacketFrames.encode(codec, packet);
+    while (true) {
+      if (closed) throw new IOException("Connection to " + processIP + ":" + processPort + " is closed");
+      try {
+        if (socket == null) connect();
+        // close() may have run while connecting, it did not see the new socket
+        if (closed) {
+          disconnect();
+          continue;
+        }
+        out.write(frame);
+        out.flush();
+        failingSince = -1;
+        backoff = INITIAL_BACKOFF;
+        return;
+      } catch (IOException e) {
+        disconnect();
+        if (failingSince < 0) failingSince = System.currentTimeMillis();
+        if (System.currentTimeMillis() - failingSince >= deadInterval) {
+          failingSince = -1;
+          throw new IOException("No connection to " + processIP + ":" + processPort + " for "
+                  + deadInterval + " ms", e);
+        }
+        waitBeforeRetry();
+      }
+    }
+  }
+
+  /**
+   * does not wait for a send in progress: its socket is closed under it and a send backing off
+   * is woken up, both fail right away
+   */
+  public void close() {
+    closed = true;
+    synchronized (retry) {
+      retry.notifyAll();
+    }
+    Socket s = socket;
+    if (s != null) {
+      try {
+        s.close();
+      } catch (IOException e) {
+        // nothing left to clean up
+      }
+    }
+  }
+
+  private void connect() throws IOException {
+    Socket s = new Socket();
+    try {
+      s.setTcpNoDelay(true);
+      s.connect(new InetSocketAddress(processIP, processPort), CONNECT_TIMEOUT);
+      out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+      socket = s;
+    } catch (IOException e) {
+      s.close();
+      throw e;
+    }
+  }
+
+  private void disconnect() {
+    Socket s = socket;
+    if (s == null) return;
+    try {
+      s.close();
+    } catch (IOException e) {
+      // nothing left to clean up
+    }
+    socket = null;
+    out = null;
+  }
+
+  // wait between half and all of the current backoff, then double it
+  private void waitBeforeRetry() throws InterruptedIOException {
+    long delay = backoff / 2 + (long) (jitter.nextDouble() * (backoff / 2));
+    long untilDead = deadInterval - (System.currentTimeMillis() - failingSince);
+    try {
+      synchronized (retry) {
+        if (!closed) retry.wait(Math.max(1, Math.min(delay, untilDead)));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reconnecting to " + processIP + ":" + processPort);
+    }
+    backoff = Math.min(backoff * 2, MAX_BACKOFF);
+  }
+}
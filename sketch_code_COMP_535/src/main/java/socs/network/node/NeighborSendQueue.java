@@ -0,0 +1,86 @@
+package socs.network.node;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * the sends waiting for one neighbor, run one after the other in the order they were queued
+ * <p/>
+ * a queue occupies at most one thread of the outbound executor while it drains, so a neighbor
+ * that is slow or unreachable only delays the packets for that neighbor
+ */
+class NeighborSendQueue {
+
+  private final OutboundExecutor executor;
+  private final ArrayDeque<FutureTask<Object>> queue = new ArrayDeque<FutureTask<Object>>();
+  // true while a drain task is queued or running on the executor
+  private boolean draining = false;
+  private boolean closed = false;
+
+  private final Runnable drain = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  NeighborSendQueue(OutboundExecutor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * queue the send behind the ones already waiting for this neighbor
+   *
+   * @return completes once the send ran, cancelled if the queue was closed first
+   */
+  Future<?> submit(Runnable send) {
+    FutureTask<Object> task = new FutureTask<Object>(send, null);
+    synchronized (this) {
+      if (closed) {
+        task.cancel(false);
+        return task;
+      }
+      queue.add(task);
+      if (draining) return task;
+      draining = true;
+    }
+    try {
+      executor.submit(drain);
+    } catch (RejectedExecutionException e) {
+      // the router is shutting down: nothing will run what is queued, and a later submit
+      // has to try again instead of finding draining stuck at true
+      synchronized (this) {
+        draining = false;
+        for (FutureTask<Object> t : queue) t.cancel(false);
+        queue.clear();
+      }
+    }
+    return task;
+  }
+
+  /**
+   * drop the sends still waiting, the neighbor is gone
+   */
+  void close() {
+    synchronized (this) {
+      closed = true;
+      for (FutureTask<Object> task : queue) task.cancel(false);
+      queue.clear();
+    }
+  }
+
+  private void drain() {
+    while (true) {
+      FutureTask<Object> task;
+      synchronized (this) {
+        task = queue.poll();
+        if (task == null) {
+          draining = false;
+          return;
+        }
+      }
+      task.run();
+    }
+  }
+}
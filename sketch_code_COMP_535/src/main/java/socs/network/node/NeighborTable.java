@@ -0,0 +1,110 @@
+package socs.network.node;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * the links of a router indexed both by port number and by the neighbor's simulated IP
+ * <p/>
+ * changes are serialized on the table, lookups and iteration are lock-free: iterating links()
+ * while neighbors come and go sees every link that stays for the whole iteration
+ */
+class NeighborTable {
+
+  private final AtomicReferenceArray<Link> slots;
+  // set bits are the free ports
+  private final BitSet free;
+  // neighbor simulated IP => link
+  private final ConcurrentHashMap<String, Link> byIP = new ConcurrentHashMap<String, Link>();
+
+  NeighborTable(int capacity) {
+    slots = new AtomicReferenceArray<Link>(capacity);
+    free = new BitSet(capacity);
+    free.set(0, capacity);
+  }
+
+  int capacity() {
+    return slots.length();
+  }
+
+  /**
+   * @return null if the port is empty or does not exist
+   */
+  Link get(int port) {
+    if (port < 0 || port >= slots.length()) return null;
+    return slots.get(port);
+  }
+
+  /**
+   * @return null if the router is not a neighbor
+   */
+  Link find(String simulatedIP) {
+    return byIP.get(simulatedIP);
+  }
+
+  boolean contains(Link l) {
+    return byIP.get(l.router2.simulatedIPAddress) == l;
+  }
+
+  synchronized boolean isFull() {
+    return free.isEmpty();
+  }
+
+  /**
+   * put the link on the lowest free port
+   *
+   * @return the port, -1 if all ports are occupied or the router already is a neighbor
+   */
+  synchronized int add(Link l) {
+    int port = free.nextSetBit(0);
+    if (port < 0 || byIP.containsKey(l.router2.simulatedIPAddress)) return -1;
+    free.clear(port);
+    slots.set(port, l);
+    l.port = port;
+    byIP.put(l.router2.simulatedIPAddress, l);
+    return port;
+  }
+
+  /**
+   * @return the link that was on the port, null if it was empty
+   */
+  synchronized Link remove(int port) {
+    Link l = get(port);
+    if (l == null) return null;
+    slots.set(port, null);
+    free.set(port);
+    byIP.remove(l.router2.simulatedIPAddress, l);
+    return l;
+  }
+
+  /**
+   * @return false if the link was not in the table
+   */
+  synchronized boolean remove(Link l) {
+    if (!contains(l)) return false;
+    remove(l.port);
+    return true;
+  }
+
+  /**
+   * every link, in no particular order
+   */
+  Collection<Link> links() {
+    return byIP.values();
+  }
+
+  /**
+   * @return the port of every occupied port, ascending
+   */
+  List<Integer> occupiedPorts() {
+    ArrayList<Integer> ports = new ArrayList<Integer>();
+    for (int port = 0; port < slots.length(); port++) {
+      if (slots.get(port) != null) ports.add(port);
+    }
+    return ports;
+  }
+}
@@ -0,0 +1,123 @@
+package socs.network.node;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * runs every outbound send of a router with a bounded amount of concurrency
+ * <p/>
+ * on a JVM with virtual threads each send gets its own virtual thread and a semaphore caps how
+ * many run at once; otherwise a fixed pool of daemon threads is used. Either way submit never
+ * runs the send on the caller's thread, which may be an I/O thread or hold the router's lock.
+ * The pool's queue is unbounded: a NeighborSendQueue has at most one drain task in it, so it
+ * holds about one task per neighbor.
+ */
+class OutboundExecutor {
+
+  private final ExecutorService executor;
+  // null when the pool itself bounds the concurrency
+  private final Semaphore permits;
+  private final boolean virtual;
+
+  OutboundExecutor(String name, int maxConcurrentSends, boolean preferVirtualThreads) {
+    ExecutorService virtualExecutor = preferVirtualThreads ? newVirtualThreadExecutor() : null;
+    if (virtualExecutor != null) {
+      executor = virtualExecutor;
+      permits = new Semaphore(maxConcurrentSends);
+      virtual = true;
+    } else {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentSends, maxConcurrentSends,
+              30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+              new DaemonThreadFactory(name));
+      pool.allowCoreThreadTimeOut(true);
+      executor = pool;
+      permits = null;
+      virtual = false;
+    }
+  }
+
+  boolean usesVirtualThreads() {
+    return virtual;
+  }
+
+  /**
+   * @throws java.util.concurrent.RejectedExecutionException once the executor was shut down
+   */
+  Future<?> submit(final Runnable send) {
+    if (permits == null) return executor.submit(send);
+    return executor.submit(new Runnable() {
+      public void run() {
+        permits.acquireUninterruptibly();
+        try {
+          send.run();
+        } finally {
+          permits.release();
+        }
+      }
+    });
+  }
+
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * wait for all the sends to finish, at most timeoutMillis in total
+   *
+   * @return false if some send did not finish in time or failed unexpectedly
+   */
+  static boolean awaitAll(List<Future<?>> sends, long timeoutMillis) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    boolean ok = true;
+    for (Future<?> f : sends) {
+      try {
+        f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        ok = false;
+      } catch (ExecutionException e) {
+        e.getCause().printStackTrace();
+        ok = false;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return ok;
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor() only exists from Java 21 on
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  static class DaemonThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    DaemonThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
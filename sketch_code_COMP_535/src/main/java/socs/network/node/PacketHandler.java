@@ -0,0 +1,11 @@
+package socs.network.node;
+
+import socs.network.message.SOSPFPacket;
+
+/**
+ * receives every fully decoded packet that arrives at this router
+ */
+public interface PacketHandler {
+
+  void handle(SOSPFPacket packet);
+}
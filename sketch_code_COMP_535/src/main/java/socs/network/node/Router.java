@@ -1,23 +1,41 @@
 package socs.network.node;
 
 import socs.network.message.LSA;
+import socs.network.message.LSADelta;
+import socs.network.message.LSAHeader;
 import socs.network.message.LinkDescription;
+import socs.network.message.PacketCodec;
+import socs.network.message.PacketFrames;
 import socs.network.message.SOSPFPacket;
+import socs.network.message.VisitedSet;
 import socs.network.util.Configuration;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.*;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
 public class Router {
 	
 	// use read write lock to ensure there are no more than one thread editing the public fields
@@ -25,24 +43,318 @@ public class Router {
 	final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 	final Lock readLock = lock.readLock();
 	final Lock writeLock = lock.writeLock();
+	// signalled whenever a neighbor reaches TWO_WAY
+	final Condition neighborStateChanged = writeLock.newCondition();
 
 	volatile protected LinkStateDatabase lsd;
+	// counters and timings, printed by stats and registered as an MBean
+	final RouterMetrics metrics = new RouterMetrics();
 	volatile RouterDescription rd = new RouterDescription();
 
-	// assuming that all routers are with 4 ports
-	volatile Link[] ports = new Link[4];
+	// 4 ports unless socs.network.router.maxNeighbors says otherwise
+	static final int DEFAULT_MAX_NEIGHBORS = 4;
+	final NeighborTable ports;
 	boolean started = false;
-	MultiThreadedServer server;
+	// sockets unless the router is simulated, see socs.network.sim
+	final Transport transport;
+	
+	// number of threads reading the neighbors' connections
+	static final int DEFAULT_IO_THREADS = 2;
+	
+	// every HELLO and LSAUPDATE is sent through this executor, at most senderThreads at a time;
+	// the sends for one neighbor are queued on its link and use at most one of them
+	static final int DEFAULT_SENDER_THREADS = 16;
+	final OutboundExecutor senders;
+	// false when senders and timers are shared with other routers and outlive this one
+	private final boolean ownExecutors;
+	
+	// codec used for the packets this router sends, "java" (default) or "binary";
+	// received packets are decoded with whatever codec the sender used
+	final PacketCodec codec;
+	
+	// a neighbor is considered down once sending to it kept failing for this many milliseconds,
+	// also the longest we wait for a HELLO handshake to complete
+	static final long DEFAULT_DEAD_INTERVAL = 5000;
+	final long deadInterval;
+	static final long SEND_TIMEOUT_MARGIN = 1000;
+	
+	// TWO_WAY neighbors get a UDP HELLO every helloInterval milliseconds, one not heard from for
+	// helloDeadInterval is dropped; both can be given per link to attach and connect
+	static final long DEFAULT_HELLO_INTERVAL = 250;
+	static final long DEFAULT_HELLO_DEAD_INTERVAL = 1000;
+	final long helloInterval;
+	final long helloDeadInterval;
+	HelloService hellos;
+	
+	// LSAs queued for a neighbor within this many milliseconds go out in one LSAUPDATE
+	static final long DEFAULT_FLOOD_WINDOW = 20;
+	final LsaFlooder flooder;
+	final ScheduledExecutorService timers;
+	
+	// with socs.network.router.snapshotFile set, the database and neighbors are written there every
+	// snapshotInterval milliseconds when they changed, and read back when the router is created
+	static final long DEFAULT_SNAPSHOT_INTERVAL = 5000;
+	// own sequence numbers a snapshot reserves: a restarted router continues after them, and
+	// using them all up writes a new snapshot right away
+	static final int SEQUENCE_RESERVE = 1000;
+	private final File snapshotFile;
+	private int reservedSequence = Integer.MIN_VALUE;
+	private long snapshotVersion = -1;
+	private List<Link> snapshotLinks = Collections.emptyList();
+	private ScheduledFuture<?> snapshotTask = null;
+	
+	// the metrics are registered as an MBean unless socs.network.router.metricsMBean is false
+	private final boolean metricsMBean;
+	// one snapshot written at a time
+	private final Object snapshotLock = new Object();
+	
+	// our own LSA is originated again after lsaRefreshInterval seconds without a change, any other
+	// LSA is flushed once it is lsaMaxAge seconds old, see LsaAging
+	static final int DEFAULT_LSA_REFRESH_INTERVAL = 1800;
+	static final int DEFAULT_LSA_MAX_AGE = 3600;
+	static final long WHEEL_TICK = 500;
+	static final int WHEEL_SLOTS = 1024;
+	final int lsaRefreshInterval;
+	final int lsaMaxAge;
+	final TimerWheel wheel;
+	final LsaAging aging;
+	
+	// wait-converged: how long the database has to stay unchanged, and the longest wait
+	static final long DEFAULT_CONVERGED_QUIET = 1000;
+	static final long DEFAULT_CONVERGED_TIMEOUT = 60000;
+	static final long CONVERGED_POLL_INTERVAL = 20;
+	
+	// our own LSA is originated at most once per minLsaInterval milliseconds,
+	// changes arriving in between are folded into one origination
+	static final long DEFAULT_MIN_LSA_INTERVAL = 100;
+	final long minLsaInterval;
+	private long lastOrigination = 0;
+	private boolean originationScheduled = false;
+	
+	// the routes are recomputed spfDelay ms after a change, then at most once per hold time,
+	// which doubles under churn up to spfMaxHoldTime, see SpfScheduler
+	static final long DEFAULT_SPF_DELAY = 50;
+	static final long DEFAULT_SPF_HOLD_TIME = 200;
+	static final long DEFAULT_SPF_MAX_HOLD_TIME = 5000;
+	
+	// detect --all prints this many equal-cost paths unless told otherwise, and never more than
+	// MAX_DETECT_PATHS, however many there are
+	static final int DEFAULT_DETECT_PATHS = 16;
+	static final int MAX_DETECT_PATHS = 1000;
 
 	public Router(Configuration config) {
+		this(config, null);
+	}
+	
+	/**
+	 * @param transport what the router talks to its neighbors over, null for sockets
+	 */
+	public Router(Configuration config, Transport transport) {
+		this(config, transport, null);
+	}
+	
+	/**
+	 * @param transport what the router talks to its neighbors over, null for sockets
+	 * @param executors timer and sender threads shared with other routers, null for the router's own
+	 */
+	public Router(Configuration config, Transport transport, RouterExecutors executors) {
 		rd.simulatedIPAddress = config.getString("socs.network.router.ip");
 		rd.processIPAddress = "127.1.1.0";
 		rd.processPortNumber = Short.valueOf(config.getString("socs.network.router.port"));
+		codec = PacketFrames.codec(config.hasPath("socs.network.router.codec") 
+				? config.getString("socs.network.router.codec") : "java");
+		deadInterval = config.hasPath("socs.network.router.deadInterval")
+				? config.getInt("socs.network.router.deadInterval") : DEFAULT_DEAD_INTERVAL;
+
+		lsd = new LinkStateDatabase(rd, metrics);
+		ports = new NeighborTable(config.hasPath("socs.network.router.maxNeighbors")
+				? config.getInt("socs.network.router.maxNeighbors") : DEFAULT_MAX_NEIGHBORS);
+		if (config.hasPath("socs.network.router.incrementalSpf")) {
+			lsd.setIncrementalSpf(config.getBoolean("socs.network.router.incrementalSpf"));
+		}
 
-		lsd = new LinkStateDatabase(rd);
-
-		this.server = new MultiThreadedServer();
-		server.start();
+		int senderThreads = config.hasPath("socs.network.router.senderThreads")
+				? config.getInt("socs.network.router.senderThreads") : DEFAULT_SENDER_THREADS;
+		boolean virtualThreads = !config.hasPath("socs.network.router.virtualThreads")
+				|| config.getBoolean("socs.network.router.virtualThreads");
+		ownExecutors = executors == null;
+		if (ownExecutors) {
+			executors = new RouterExecutors(Executors.newSingleThreadScheduledExecutor(
+					new OutboundExecutor.DaemonThreadFactory("sospf-timer-" + rd.processPortNumber)),
+					new OutboundExecutor("sospf-send-" + rd.processPortNumber, senderThreads, virtualThreads));
+		}
+		senders = executors.senders;
+		timers = executors.timers;
+		long floodWindow = config.hasPath("socs.network.router.floodWindow")
+				? config.getInt("socs.network.router.floodWindow") : DEFAULT_FLOOD_WINDOW;
+		minLsaInterval = config.hasPath("socs.network.router.minLsaInterval")
+				? config.getInt("socs.network.router.minLsaInterval") : DEFAULT_MIN_LSA_INTERVAL;
+		boolean deltaLsa = config.hasPath("socs.network.router.deltaLsa")
+				&& config.getBoolean("socs.network.router.deltaLsa");
+		
+		lsaRefreshInterval = config.hasPath("socs.network.router.lsaRefreshInterval")
+				? config.getInt("socs.network.router.lsaRefreshInterval") : DEFAULT_LSA_REFRESH_INTERVAL;
+		lsaMaxAge = config.hasPath("socs.network.router.lsaMaxAge")
+				? config.getInt("socs.network.router.lsaMaxAge") : DEFAULT_LSA_MAX_AGE;
+		wheel = new TimerWheel(WHEEL_TICK, WHEEL_SLOTS);
+		aging = new LsaAging(rd.simulatedIPAddress, lsaRefreshInterval, lsaMaxAge, wheel, new LsaAging.Listener() {
+			public void refreshDue() {
+				startLSAUpdates();
+			}
+			
+			public void maxAged(LSA lsa) {
+				processMaxAged(lsa);
+			}
+		});
+		lsd.setAging(aging);
+		wheel.start(timers);
+		
+		lsd.scheduleSpf(timers,
+				config.hasPath("socs.network.router.spfDelay")
+						? config.getInt("socs.network.router.spfDelay") : DEFAULT_SPF_DELAY,
+				config.hasPath("socs.network.router.spfHoldTime")
+						? config.getInt("socs.network.router.spfHoldTime") : DEFAULT_SPF_HOLD_TIME,
+				config.hasPath("socs.network.router.spfMaxHoldTime")
+						? config.getInt("socs.network.router.spfMaxHoldTime") : DEFAULT_SPF_MAX_HOLD_TIME);
+		
+		flooder = new LsaFlooder(rd, floodWindow, timers, new LsaFlooder.Sender() {
+			public Future<?> send(Link link, SOSPFPacket packet) {
+				// the LSAs leave with the age they have by now
+				return link.sendQueue.submit(new LSAUpdateSender(link, aging.aged(packet)));
+			}
+		}, deltaLsa);
+		
+		helloInterval = config.hasPath("socs.network.router.helloInterval")
+				? config.getInt("socs.network.router.helloInterval") : DEFAULT_HELLO_INTERVAL;
+		helloDeadInterval = config.hasPath("socs.network.router.helloDeadInterval")
+				? config.getInt("socs.network.router.helloDeadInterval") : DEFAULT_HELLO_DEAD_INTERVAL;
+		
+		int ioThreads = config.hasPath("socs.network.router.ioThreads")
+				? config.getInt("socs.network.router.ioThreads") : DEFAULT_IO_THREADS;
+		this.transport = transport != null ? transport : new SocketTransport(codec, deadInterval, ioThreads);
+		hellos = new HelloService(rd, ports, this.transport, timers, new HelloService.Listener() {
+			public void neighborLost(Link link) {
+				processNeighborLost(link);
+			}
+		}, metrics);
+		metricsMBean = !config.hasPath("socs.network.router.metricsMBean")
+				|| config.getBoolean("socs.network.router.metricsMBean");
+		if (metricsMBean) registerMetrics();
+		
+		snapshotFile = config.hasPath("socs.network.router.snapshotFile")
+				? new File(config.getString("socs.network.router.snapshotFile")) : null;
+		if (snapshotFile != null) {
+			// before the transport starts, nothing may reach the database ahead of the snapshot
+			restoreSnapshot();
+			long snapshotInterval = config.hasPath("socs.network.router.snapshotInterval")
+					? config.getInt("socs.network.router.snapshotInterval") : DEFAULT_SNAPSHOT_INTERVAL;
+			snapshotTask = timers.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					writeSnapshotIfChanged();
+				}
+			}, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+		}
+		
+		try {
+			this.transport.start(rd.processIPAddress, rd.processPortNumber, new ClientMsgHandler(),
+					new SeenLsaFilter(lsd, lsaMaxAge, metrics), hellos);
+			hellos.start();
+		} catch (IOException e) {
+			System.out.println("Could not listen on port " + rd.processPortNumber);
+		}
+	}
+	
+	/**
+	 * take over the database and neighbors of the snapshot, before start: the neighbors get
+	 * attached again and the adjacencies' database descriptions only have to bring the
+	 * differences. Our own LSA starts over without links, at a sequence number none of its
+	 * instances before the restart used.
+	 */
+	private void restoreSnapshot() {
+		LsdbSnapshot snapshot;
+		try {
+			snapshot = LsdbSnapshot.read(snapshotFile);
+		} catch (IOException e) {
+			System.out.println("Ignoring snapshot " + snapshotFile + ": " + e.getMessage());
+			snapshot = null;
+		}
+		
+		writeLock.lock();
+		
+		try{
+			if (snapshot != null && snapshot.routerIP.equals(rd.simulatedIPAddress)) {
+				// the LSAs kept aging while the router was down
+				long downFor = Math.max(0, System.currentTimeMillis() - snapshot.written) / 1000;
+				for (LSA lsa : snapshot.lsas) {
+					if (lsa.linkStateID.equals(rd.simulatedIPAddress) || lsa.lsaAge + downFor >= lsaMaxAge) continue;
+					lsd.install(lsa.withAge((int) (lsa.lsaAge + downFor)));
+				}
+				LSA own = lsd.get(rd.simulatedIPAddress);
+				lsd.install(own.withSeqNumber(Math.max(own.lsaSeqNumber, snapshot.ownSequence)));
+				for (LsdbSnapshot.Neighbor n : snapshot.neighbors) {
+					processAttach(n.processIP, n.processPort, n.simulatedIP, n.weight, n.helloInterval,
+							n.helloDeadInterval);
+				}
+				System.out.println("Restored " + snapshot.lsas.size() + " LSAs and " + snapshot.neighbors.size()
+						+ " neighbors from " + snapshotFile);
+			} else if (snapshot != null) {
+				System.out.println("Ignoring snapshot " + snapshotFile + " of " + snapshot.routerIP);
+			}
+			// reserve the next sequence numbers before any of them is used
+			writeSnapshot();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	private void writeSnapshotIfChanged() {
+		readLock.lock();
+		
+		try{
+			if (lsd.version() != snapshotVersion || !new ArrayList<Link>(ports.links()).equals(snapshotLinks)) writeSnapshot();
+		} finally {
+			readLock.unlock();
+		}
+	}
+	
+	// under readLock, so neighbors and database agree; the callers may hold either lock already
+	private void writeSnapshot() {
+		readLock.lock();
+		
+		try{
+			synchronized (snapshotLock) {
+				List<LsdbSnapshot.Neighbor> neighbors = new ArrayList<LsdbSnapshot.Neighbor>();
+				List<Link> links = new ArrayList<Link>(ports.links());
+				for (Link l : links) neighbors.add(LsdbSnapshot.Neighbor.of(l));
+				LinkStateDatabase.Snapshot db = lsd.snapshot();
+				LSA own = db.get(rd.simulatedIPAddress);
+				int reserved = (own == null ? reservedSequence : own.lsaSeqNumber) + SEQUENCE_RESERVE;
+				try {
+					List<LSA> lsas = new ArrayList<LSA>();
+					for (LSA lsa : db.values()) lsas.add(aging.aged(lsa));
+					new LsdbSnapshot(rd.simulatedIPAddress, reserved, neighbors, lsas).write(snapshotFile);
+					reservedSequence = reserved;
+					snapshotVersion = db.version;
+					snapshotLinks = links;
+				} catch (IOException e) {
+					System.out.println("Could not write snapshot " + snapshotFile + ": " + e.getMessage());
+				}
+			}
+		} finally {
+			readLock.unlock();
+		}
+	}
+	
+	// our own LSA gets a new instance; once it reaches the sequence numbers reserved by the
+	// snapshot a new one has to be written first, a restart must not reuse them. The caller
+	// holds writeLock, the snapshot is taken after the whole change
+	private void bumpOwnSequence() {
+		lsd.incrementSequence(rd.simulatedIPAddress);
+		if (snapshotFile == null) return;
+		LSA own = lsd.get(rd.simulatedIPAddress);
+		synchronized (snapshotLock) {
+			if (own != null && own.lsaSeqNumber >= reservedSequence) writeSnapshot();
+		}
 	}
 
 	/**
@@ -55,10 +367,52 @@ public class Router {
 	 */
 	private void processDetect(String destinationIP) {
 		String result = lsd.getShortestPath(destinationIP);
+		if (result == null) result = "No path to " + destinationIP;
 		System.out.println(result);
 		System.out.print(">>");
 	}
 
+	/**
+	 * output every shortest path to the destination, at most limit of them, followed by how many
+	 * there are
+	 */
+	private void processDetectAll(String destinationIP, int limit) {
+		EqualCostPaths paths = lsd.equalCostPaths();
+		long count = paths.pathCount(destinationIP);
+		if (count == 0) {
+			System.out.println("No path to " + destinationIP);
+		} else {
+			for (String path : paths.pathsTo(destinationIP, Math.max(1, Math.min(limit, MAX_DETECT_PATHS)))) {
+				System.out.println(path);
+			}
+			System.out.println((count == Long.MAX_VALUE ? "at least " + Long.MAX_VALUE : String.valueOf(count))
+					+ " equal-cost path(s) to " + destinationIP);
+		}
+		System.out.print(">>");
+	}
+
+	/**
+	 * output the routing table of the last scheduled SPF run, which may lag behind the database
+	 * by up to the SPF hold time: every destination with its distance and the ports of the
+	 * equal-cost next hops, each with the number of shortest paths through it
+	 */
+	private void processRoutes() {
+		LinkStateDatabase.SpfResult routes = lsd.routes();
+		EqualCostPaths paths = routes.tree.equalCostPaths();
+		for (String destination : routes.tree.reachable()) {
+			StringBuilder sb = new StringBuilder(destination).append("\t").append(routes.tree.distanceTo(destination));
+			for (EqualCostPaths.NextHop hop : paths.nextHops(destination)) {
+				Link link = ports.find(hop.neighborIP);
+				sb.append("\tport ").append(link == null ? "-" : String.valueOf(link.port)).append(" via ")
+						.append(hop.neighborIP).append(" (").append(hop.paths).append(")");
+			}
+			System.out.println(sb);
+		}
+		System.out.println("computed for database version " + routes.snapshot.version + " (now "
+				+ lsd.version() + "), SPF hold time " + lsd.spfHoldTime() + " ms");
+		System.out.print(">>");
+	}
+
 	/**
 	 * disconnect with the router identified by the given destination ip address
 	 * Notice: this command should trigger the synchronization of database
@@ -67,77 +421,166 @@ public class Router {
 	 *            the port number which the link attaches at
 	 */
 	private void processDisconnect(short portNumber) {
-		// return if there is either no router connected with this port or the status is not TWO_WAY
-		if (ports[portNumber]==null || ports[portNumber].router2.status != RouterStatus.TWO_WAY) {
-			System.out.println("Port "+portNumber+" has no neighbor connected yet");
-			return;
+		Link link;
+		List<Future<?>> sends;
+		writeLock.lock();
+		
+		try{
+			// return if there is either no router connected with this port or the status is not TWO_WAY
+			link = ports.get(portNumber);
+			if (link==null || link.router2.status != RouterStatus.TWO_WAY) {
+				System.out.println("Port "+portNumber+" has no neighbor connected yet");
+				return;
+			}
+			dropNeighbor(link, true);
+			sends = flooder.flushAll();
+		}
+		finally{
+			writeLock.unlock();
 		}
 		
-		LSA thisRd = lsd._store.get(rd.simulatedIPAddress);
-		LSA remoteRd = lsd._store.get(ports[portNumber].router2.simulatedIPAddress);
+		// the remote router has to get the LSAs before its port is emptied, and the sends are
+		// not waited for with the lock held
+		awaitSends(sends, "LSAUPDATE");
+		writeLock.lock();
 		
-		// remove the link to remote router from current router's LSA
-		LinkDescription remLd = null;
-		for(LinkDescription ld : thisRd.links) {
-			 if(ld.linkID.equals(ports[portNumber].router2.simulatedIPAddress)) remLd = ld;
+		try{
+			removeFromPorts(link);
 		}
-		thisRd.links.remove(remLd);
-		thisRd.lsaSeqNumber ++;
-		
-		// remove the link to current router from remote router's LSA
-		remLd = null;
-		for(LinkDescription ld : remoteRd.links) {
-			 if(ld.linkID.equals(rd.simulatedIPAddress)) remLd = ld;
+		finally{
+			writeLock.unlock();
 		}
-		remoteRd.links.remove(remLd);
-		remoteRd.lsaSeqNumber ++;
-		
-		// send LSAUpdate message of current and remote routers
-		sendRemLSAUpdate(ports[portNumber].router2.simulatedIPAddress);
-		// empty this port
-		ports[portNumber] = null;
 	}
 	
-	// a helper method to send LSAUpdates to all other neighbors
-	public void sendRemLSAUpdate(String remoteRouter) {
-		LinkedList<LSAUpdateSocket> lsaupdates = new LinkedList<LSAUpdateSocket>();
-
+	/**
+	 * flush an LSA that reached MaxAge without a newer instance arriving and flood it once more
+	 * at MaxAge, so the other routers flush their copies too
+	 */
+	void processMaxAged(LSA lsa) {
 		writeLock.lock();
 		
 		try{
-			short lsaupdatemsg = 1;
-			String dontForwardTo = rd.simulatedIPAddress;
+			if (lsd.get(lsa.linkStateID) != lsa) return;
+			System.out.println("LSA of " + lsa.linkStateID + " reached MaxAge, flushing it");
+			lsd.remove(lsa.linkStateID);
 			
-			//send out message
-			for (int i = 0; i < ports.length; i++) {
-				// If null or already initialized skip
-				if (ports[i] != null && ports[i].router2.status == RouterStatus.TWO_WAY) {
-					SOSPFPacket updateMsg = new SOSPFPacket(lsaupdatemsg, dontForwardTo, dontForwardTo,
-							rd.simulatedIPAddress, ports[i].router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
-					updateMsg.originalTrigger = true;
-					updateMsg.lsaArray = new Vector<LSA>();
-					updateMsg.lsaArray.add(lsd._store.get(rd.simulatedIPAddress));	//add curr router's lsa
-					if (remoteRouter != null) updateMsg.lsaArray.add(lsd._store.get(remoteRouter));	//add remote router's lsa
-					// start the thread to send LSAUPDATE and handle corresponding response
-					LSAUpdateSocket sendUpdate = new LSAUpdateSocket(ports[i], updateMsg);
-	
-					sendUpdate.start();
-					lsaupdates.add(sendUpdate);
+			List<LSA> flush = Collections.singletonList(lsa.withAge(lsaMaxAge));
+			VisitedSet visited = VisitedSet.EMPTY.plus(rd.simulatedIPAddress);
+			for (Link l : ports.links()) {
+				if (l.router2.status == RouterStatus.TWO_WAY) {
+					// a delta would have the receivers skip it, same sequence number
+					flooder.sendWhole(l.router2.simulatedIPAddress, originsOf(flush));
+					flooder.enqueue(l, flush, visited);
 				}
 			}
 		}
 		finally{
 			writeLock.unlock();
 		}
-
+	}
+	
+	/**
+	 * drop a neighbor that stopped answering HELLOs the way a disconnect would, except that
+	 * the neighbor itself is not told
+	 */
+	void processNeighborLost(Link link) {
+		writeLock.lock();
 		
-		try {
-			for (LSAUpdateSocket h: lsaupdates){
-				h.join();
+		try{
+			if (!ports.contains(link)) return;
+			System.out.println("No HELLO from " + link.router2.simulatedIPAddress + " for " + link.helloDeadInterval
+					+ " ms, removing it");
+			dropNeighbor(link, false);
+		}
+		finally{
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * drop the links between us and the neighbor from both LSAs and flood both; the caller holds
+	 * writeLock. A neighbor that cannot be reached anymore has its port emptied first, one we
+	 * disconnect from is sent the LSAs as well and its port is left for the caller to empty once
+	 * they are out.
+	 */
+	private void dropNeighbor(Link link, boolean tellNeighbor) {
+		String remoteIP = link.router2.simulatedIPAddress;
+		if (!tellNeighbor) removeFromPorts(link);
+		
+		lsd.removeLink(rd.simulatedIPAddress, remoteIP);
+		bumpOwnSequence();
+		List<LSA> lsas = new ArrayList<LSA>();
+		lsas.add(lsd.get(rd.simulatedIPAddress));
+		if (lsd.removeLink(remoteIP, rd.simulatedIPAddress)) {
+			lsd.incrementSequence(remoteIP);
+			lsas.add(lsd.get(remoteIP));
+		}
+		
+		// queued, the caller may be the timer thread that also flushes the flooder
+		VisitedSet visited = VisitedSet.EMPTY.plus(rd.simulatedIPAddress);
+		for (Link l : ports.links()) {
+			if (l.router2.status != RouterStatus.TWO_WAY) continue;
+			// the neighbor could not ask for a full LSA once its port is emptied
+			if (l == link) flooder.sendWhole(remoteIP, originsOf(lsas));
+			flooder.enqueue(l, lsas, visited);
+		}
+	}
+	
+	// every link owns the persistent connection used for all packets sent to that neighbor,
+	// and the queue of sends waiting for it
+	Link createLink(RouterDescription rd2, short weight) {
+		Link l = new Link(rd, rd2, weight);
+		l.connection = transport.connect(rd2.processIPAddress, rd2.processPortNumber);
+		l.sendQueue = new NeighborSendQueue(senders);
+		l.helloInterval = helloInterval;
+		l.helloDeadInterval = helloDeadInterval;
+		return l;
+	}
+	
+	// link of unknown weight, for a neighbor that attached to us
+	Link createLink(RouterDescription rd2) {
+		Link l = new Link(rd, rd2);
+		l.connection = transport.connect(rd2.processIPAddress, rd2.processPortNumber);
+		l.sendQueue = new NeighborSendQueue(senders);
+		l.helloInterval = helloInterval;
+		l.helloDeadInterval = helloDeadInterval;
+		return l;
+	}
+	
+	// empty the port of the link and close its connection; callers mostly hold writeLock, so
+	// the connection is closed on a sender thread and never while holding the lock
+	void removeFromPorts(Link l) {
+		if (!ports.remove(l)) return;
+		flooder.discard(l.router2.simulatedIPAddress);
+		l.sendQueue.close();
+		final Transport.Connection connection = l.connection;
+		Runnable close = new Runnable() {
+			public void run() {
+				connection.close();
 			}
-		} catch(InterruptedException e) {
-			System.out.println("Failed to wait for all threads sending LSAUPDATE");
-	  	}
+		};
+		try {
+			senders.submit(close);
+		} catch (RejectedExecutionException e) {
+			// shutting down, nothing left to wait for
+			close.run();
+		}
+	}
+	
+	void removeFromPorts(String simulatedIP) {
+		Link l = ports.find(simulatedIP);
+		if (l != null) removeFromPorts(l);
+	}
+	
+	SOSPFPacket createHelloMsg(Link l) {
+		return new SOSPFPacket((short) 0, rd.simulatedIPAddress, l.router2.simulatedIPAddress,
+				rd.simulatedIPAddress, l.router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
+	}
+	
+	static List<String> originsOf(List<LSA> lsas) {
+		List<String> origins = new ArrayList<String>();
+		for (LSA lsa : lsas) origins.add(lsa.linkStateID);
+		return origins;
 	}
 
 
@@ -152,6 +595,11 @@ public class Router {
 	 * returns int indicating neighbor index (-1 if not added)
 	 */
 	private int processAttach(String processIP, short processPort, String simulatedIP, short weight) {
+		return processAttach(processIP, processPort, simulatedIP, weight, helloInterval, helloDeadInterval);
+	}
+	
+	private int processAttach(String processIP, short processPort, String simulatedIP, short weight,
+			long linkHelloInterval, long linkDeadInterval) {
 		int finalindex = -1;
 		
 		// acquire lock
@@ -163,33 +611,29 @@ public class Router {
 				return finalindex; 	//Don't want to attach to itself
 			}
 			
-			int openPort = -1;	//Check if there's an available neighbor port
-			boolean alreadyNeighbor = false;
-	
-			// find a non-occupied port and insert
-			for (int i = 0; i < 4; i++) {
-				if (ports[i] == null) {
-					openPort = i;
-					
-				}
-				else if(ports[i].router2.simulatedIPAddress.equals(simulatedIP)){
-					alreadyNeighbor = true;
-					finalindex = i;
-				}
+			// SPF cannot settle a graph with negative weights
+			if (weight < 0) {
+				System.out.println("Unable to attach. Link weight cannot be negative.");
+				return finalindex;
 			}
+			
+			Link existing = ports.find(simulatedIP);
 	
 			// Make sure there is an open neighbor spot and it's not already a neighbor
-			if (openPort != -1 && !alreadyNeighbor) {
-				RouterDescription rd2 = new RouterDescription(processIP, processPort, simulatedIP);
-				ports[openPort] = new Link(rd, rd2, weight);
-				finalindex = openPort;
-			} 
-			else if(alreadyNeighbor){
+			if (existing != null) {
 				System.out.println("Unable to attach. Already neighbor.");
+				finalindex = existing.port;
 			}
-			else {
+			else if (ports.isFull()) {
 				System.out.println("Unable to attach. All ports are occupied.");
 			}
+			else {
+				RouterDescription rd2 = new RouterDescription(processIP, processPort, simulatedIP);
+				Link link = createLink(rd2, weight);
+				link.helloInterval = linkHelloInterval;
+				link.helloDeadInterval = linkDeadInterval;
+				finalindex = ports.add(link);
+			}
 		}
 		finally{
 			// release lock
@@ -218,25 +662,16 @@ public class Router {
 		// start LOCK
 		writeLock.lock();
 		
+		// the handshake already added and originated the links it brought up
 		boolean changeofstate = false;	//check if a neighbor was actually added
 		
 		try{
 			//add if not already a link
-			for (Link l:ports) {
-				if (l != null && l.router2.status == RouterStatus.TWO_WAY) {
-					boolean newlink = true;
-					
-					//check if we've previously added it to links, if so, skip
-					for(LinkDescription ld : lsd._store.get(rd.simulatedIPAddress).links) {
-						 if(ld.linkID.equals(l.router2.simulatedIPAddress)) newlink = false;
-					}
-					
-					if(newlink){
-						LinkDescription newLink = new LinkDescription(l.router2.simulatedIPAddress, l.router2.processPortNumber, l.weight);
-						lsd._store.get(rd.simulatedIPAddress).links.add(newLink);	
-						
-						changeofstate = true;
-					}
+			for (Link l:ports.links()) {
+				if (l.router2.status == RouterStatus.TWO_WAY) {
+					//skip if we've previously added it to links
+					LinkDescription newLink = new LinkDescription(l.router2.simulatedIPAddress, l.router2.processPortNumber, l.weight);
+					if(lsd.addLink(rd.simulatedIPAddress, newLink)) changeofstate = true;
 				}
 			}
 		}
@@ -246,37 +681,29 @@ public class Router {
 		}
 		
 		// helper method to send out LSAUPDATE to connected neighbors
-		//true because it's the original trigger for the lsaupdates
-//		startLSAUpdates(true);
-		if(changeofstate){
-			boolean originaltrigger = true;
-			startLSAUpdates(originaltrigger);
-		}
+		if(changeofstate) startLSAUpdates();
 
 
 	}
 
 	
 	
-	private void startHellos(){
-		LinkedList<HelloSocket> hellos = new LinkedList<HelloSocket>();
+	// returns the links a HELLO was sent to
+	private List<Link> startHellos(){
+		LinkedList<Future<?>> hellos = new LinkedList<Future<?>>();
+		LinkedList<Link> links = new LinkedList<Link>();
 		
-		// question: start after releasing lock?
 		// start LOCK
 		writeLock.lock();
 		
 		try{
-			for (int i = 0; i < ports.length; i++) {
-				// If null or already initialized skip
-				if (ports[i] != null && ports[i].router2.status != RouterStatus.TWO_WAY) {
-					 SOSPFPacket helloMsg = new SOSPFPacket((short) 0, rd.simulatedIPAddress, ports[i].router2.simulatedIPAddress,
-							rd.simulatedIPAddress, ports[i].router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
-	
-					// start the thread to send HELLO and handle corresponding response
-					HelloSocket sendHello = new HelloSocket(ports[i], helloMsg);
-					ports[i].router2.status = RouterStatus.INIT;
-					sendHello.start();
-					hellos.add(sendHello);
+			for (Link l : ports.links()) {
+				// If already initialized skip
+				if (l.router2.status != RouterStatus.TWO_WAY) {
+					// send HELLO, the response arrives through the server
+					l.router2.status = RouterStatus.INIT;
+					hellos.add(l.sendQueue.submit(new HelloSender(l, createHelloMsg(l))));
+					links.add(l);
 				}
 			}
 		}
@@ -286,66 +713,103 @@ public class Router {
 		}
 		
 		
-		try {
-			for (HelloSocket h: hellos){
-				h.join();
+		awaitSends(hellos, "HELLO");
+		
+		awaitTwoWay(links);
+		return links;
+	}
+	
+	// wait for the sends, at most as long as a send may try before it gives up on the neighbor
+	private void awaitSends(List<Future<?>> sends, String what) {
+		if (!OutboundExecutor.awaitAll(sends, deadInterval + SEND_TIMEOUT_MARGIN)) {
+			System.out.println("Failed to wait for all " + what + " sends");
+		}
+	}
+	
+	// wait until the HELLO handshake with every link finished or the dead interval passed,
+	// links that still are not TWO_WAY by then are dropped
+	private void awaitTwoWay(List<Link> links) {
+		writeLock.lock();
+		
+		try{
+			long remaining = TimeUnit.MILLISECONDS.toNanos(deadInterval);
+			while (remaining > 0 && !allTwoWay(links)) {
+				remaining = neighborStateChanged.awaitNanos(remaining);
 			}
-		} catch(InterruptedException e) {
-			System.out.println("Failed to wait for all threads sending HELLO");
-	  	}
+			for (Link l : links) {
+				if (l.router2.status != RouterStatus.TWO_WAY && ports.contains(l)) {
+					System.out.println("No HELLO received from " + l.router2.simulatedIPAddress);
+					removeFromPorts(l);
+				}
+			}
+		} catch (InterruptedException e) {
+			System.out.println("Failed to wait for HELLO responses");
+		} finally {
+			writeLock.unlock();
+		}
 	}
 	
-	//boolean trigger represents if it was the original trigger for LSA update
-	private void startLSAUpdates(boolean trigger){
-		LinkedList<LSAUpdateSocket> lsaupdates = new LinkedList<LSAUpdateSocket>();
-
+	private boolean allTwoWay(List<Link> links) {
+		for (Link l : links) {
+			if (ports.contains(l) && l.router2.status != RouterStatus.TWO_WAY) return false;
+		}
+		return true;
+	}
+	
+	// within minLsaInterval of the last origination the LSA is only marked to be originated later
+	private void startLSAUpdates(){
 		writeLock.lock();
 		
 		try{
-			// then send LSAUpdate
-			short lsaupdatemsg = 1;
-			String dontForwardTo = rd.simulatedIPAddress;
+			if (originationScheduled) return;
 			
-			//create string (routerID) that receivers shouldn't forward to including all 2way neighbors
-			for (int i = 0; i < ports.length; i++) {
-				if (ports[i] != null && ports[i].router2.status == RouterStatus.TWO_WAY) {
-					dontForwardTo += '&' + ports[i].router2.simulatedIPAddress;
-				}
+			long wait = lastOrigination + minLsaInterval - System.currentTimeMillis();
+			if (wait > 0) {
+				originationScheduled = true;
+				timers.schedule(new Runnable() {
+					public void run() {
+						originateLSA();
+					}
+				}, wait, TimeUnit.MILLISECONDS);
+				return;
 			}
+			originateLSA();
+		}
+		finally{
+			writeLock.unlock();
+		}
+	}
+	
+	// bump our own LSA once and queue it for every neighbor
+	private void originateLSA(){
+		writeLock.lock();
+		
+		try{
+			originationScheduled = false;
+			
+			//routers that receivers shouldn't forward to, including all 2way neighbors
+			List<String> covered = new ArrayList<String>();
+			covered.add(rd.simulatedIPAddress);
+			for (Link l : ports.links()) {
+				if (l.router2.status == RouterStatus.TWO_WAY) covered.add(l.router2.simulatedIPAddress);
+			}
+			VisitedSet visited = VisitedSet.EMPTY.plus(covered);
 			
 			// in case this LSAUpdate message is for quit()
-			if (!lsd._store.containsKey(rd.simulatedIPAddress)) return;
-			lsd._store.get(rd.simulatedIPAddress).lsaSeqNumber++;	//increment curr router's lsa seq number once
+			if (!lsd.contains(rd.simulatedIPAddress)) return;
+			bumpOwnSequence();	//increment curr router's lsa seq number once
+			lastOrigination = System.currentTimeMillis();
+			List<LSA> own = Collections.singletonList(lsd.get(rd.simulatedIPAddress));
 	
-			//send out message
-			for (int i = 0; i < ports.length; i++) {
-				// If null or already initialized skip
-				if (ports[i] != null && ports[i].router2.status == RouterStatus.TWO_WAY) {
-					SOSPFPacket updateMsg = new SOSPFPacket(lsaupdatemsg, dontForwardTo, dontForwardTo,
-							rd.simulatedIPAddress, ports[i].router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
-					updateMsg.originalTrigger = trigger;
-					updateMsg.lsaArray = new Vector<LSA>();
-					updateMsg.lsaArray.add(lsd._store.get(rd.simulatedIPAddress));	//add curr router's lsa
-					// start the thread to send LSAUPDATE and handle corresponding response
-					LSAUpdateSocket sendUpdate = new LSAUpdateSocket(ports[i], updateMsg);
-	
-					sendUpdate.start();
-					lsaupdates.add(sendUpdate);
+			for (Link l : ports.links()) {
+				if (l.router2.status == RouterStatus.TWO_WAY) {
+					flooder.enqueue(l, own, visited);
 				}
 			}
 		}
 		finally{
 			writeLock.unlock();
 		}
-
-		
-		try {
-			for (LSAUpdateSocket h: lsaupdates){
-				h.join();
-			}
-		} catch(InterruptedException e) {
-			System.out.println("Failed to wait for all threads sending LSAUPDATE");
-	  	}
 	}
 	
 
@@ -357,7 +821,8 @@ public class Router {
 	 * <p/>
 	 * This command does trigger the link database synchronization
 	 */
-	private void processConnect(String processIP, short processPort, String simulatedIP, short weight) {
+	private void processConnect(String processIP, short processPort, String simulatedIP, short weight,
+			long linkHelloInterval, long linkDeadInterval) {
 		System.out.println("Started " + started);
 		
 		//check if start's been run yet
@@ -366,31 +831,104 @@ public class Router {
 			return;
 		}
 		
+		Link link = attachForConnect(processIP, processPort, simulatedIP, weight, linkHelloInterval, linkDeadInterval);
+		if (link != null) handshake(Collections.singletonList(link));
+	}
+	
+	/**
+	 * connect to every neighbor given as {processIP, processPort, simulatedIP, weight [, hello, dead]},
+	 * with all the HELLOs sent at once and the handshakes awaited together
+	 */
+	private void processConnectAll(List<String[]> neighbors) {
+		if(!started) {
+			System.out.println("Not started yet. Can't connect.");
+			return;
+		}
+		
+		List<Link> links = new ArrayList<Link>();
+		for (String[] n : neighbors) {
+			Link link = attachForConnect(n[0], Short.parseShort(n[1]), n[2], Short.parseShort(n[3]),
+					optionalInterval(n, 4, helloInterval), optionalInterval(n, 5, helloDeadInterval));
+			if (link != null) links.add(link);
+		}
+		handshake(links);
+	}
+	
+	/**
+	 * attach every neighbor given as {processIP, processPort, simulatedIP, weight [, hello, dead]}
+	 */
+	private void processAttachAll(List<String[]> neighbors) {
+		for (String[] n : neighbors) {
+			processAttach(n[0], Short.parseShort(n[1]), n[2], Short.parseShort(n[3]),
+					optionalInterval(n, 4, helloInterval), optionalInterval(n, 5, helloDeadInterval));
+		}
+	}
+	
+	// the link to handshake with, null if there is no port for it or it is TWO_WAY already
+	private Link attachForConnect(String processIP, short processPort, String simulatedIP, short weight,
+			long linkHelloInterval, long linkDeadInterval) {
 		// check for empty neighbor slot
-		int index = processAttach(processIP, processPort, simulatedIP, weight);
+		int index = processAttach(processIP, processPort, simulatedIP, weight, linkHelloInterval, linkDeadInterval);
 		
 		// wasn't already a neighbor or added quit, or connection not started
-		if(index == -1 || ports[index].router2.status == RouterStatus.TWO_WAY) return;
-		
+		if(index == -1) return null;
+		Link link = ports.get(index);
+		if(link == null || link.router2.status == RouterStatus.TWO_WAY) return null;
+		return link;
+	}
+	
+	// HELLO to every link at once, then wait until all of them are TWO_WAY or dropped
+	private void handshake(List<Link> links) {
+		LinkedList<Future<?>> hellos = new LinkedList<Future<?>>();
+		LinkedList<Link> sent = new LinkedList<Link>();
 			
 		writeLock.lock();
 		
 		try{
-			SOSPFPacket helloMsg = new SOSPFPacket((short) 0, rd.simulatedIPAddress, ports[index].router2.simulatedIPAddress,
-			rd.simulatedIPAddress, ports[index].router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
-	
-			// start the thread to send HELLO and handle corresponding response
-			HelloSocket sendHello = new HelloSocket(ports[index], helloMsg);
-			ports[index].router2.status = RouterStatus.INIT;
-			sendHello.start();
-			
-			try{ sendHello.join();}
-			catch(Exception e){	System.out.println("Catch thread didn't finish"); }
+			for (Link link : links) {
+				if (!ports.contains(link)) continue;
+				// send HELLO, the response arrives through the server
+				link.router2.status = RouterStatus.INIT;
+				hellos.add(link.sendQueue.submit(new HelloSender(link, createHelloMsg(link))));
+				sent.add(link);
+			}
 		}
 		finally{
 			writeLock.unlock();
 		}
-			
+		
+		// wait without the lock, handling the response needs it
+		awaitSends(hellos, "HELLO");
+		
+		// reaching TWO_WAY originated our LSA and started the database exchange, see helloMessage
+		awaitTwoWay(sent);
+	}
+	
+	/**
+	 * wait until the link state database did not change for quiet milliseconds, at most timeout
+	 * milliseconds
+	 */
+	private void processWaitConverged(long quiet, long timeout) throws InterruptedException {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+		long version = lsd.version();
+		long changed = start;
+		while (true) {
+			long now = System.nanoTime();
+			long v = lsd.version();
+			if (v != version) {
+				version = v;
+				changed = now;
+			} else if (now - changed >= TimeUnit.MILLISECONDS.toNanos(quiet)) {
+				System.out.println("converged, last change " + (changed - start) / 1000000L + " ms after waiting began");
+				return;
+			}
+			if (now >= deadline) {
+				System.out.println("not converged within " + timeout + " ms");
+				return;
+			}
+			Thread.sleep(CONVERGED_POLL_INTERVAL);
+		}
 	}
 
 	/**
@@ -401,7 +939,8 @@ public class Router {
 		
 		try{
 			int i = 1;
-			for (Link l : ports) {
+			for (int port : ports.occupiedPorts()) {
+				Link l = ports.get(port);
 				if (l != null && l.router2.status==RouterStatus.TWO_WAY) {
 					System.out.println("IP address of neighbor" + i + " " + l.router2.simulatedIPAddress);
 					i++;
@@ -417,104 +956,136 @@ public class Router {
 	 * disconnect with all neighbors and quit the program
 	 */
 	private void processQuit() {
-		LSA thisRd = lsd._store.get(rd.simulatedIPAddress);
-		
-		// remove all other links from current router's LSA
-		// only keep itself in LSA
-		while (thisRd.links.size()>1) thisRd.links.removeLast();
-		thisRd.lsaSeqNumber ++;
-		
-		// remove current router's LinkDescription from all other router's LSA
-		for (LSA rlsa: lsd._store.values()) {
-			LinkDescription rmvLink = null;
-			for (LinkDescription l: rlsa.links) {
-				if (l.linkID.equals(rd.simulatedIPAddress)) rmvLink = l;
-			}
-			if (rmvLink!=null) {
-				rlsa.links.remove(rmvLink);
-				rlsa.lsaSeqNumber++;
-			}
-		}
-		
-		// send LSAupdate so that all other can delete current router from all LSA
-		LinkedList<LSAUpdateSocket> lsaupdates = new LinkedList<LSAUpdateSocket>();
+		List<Future<?>> sends;
 		writeLock.lock();
 		
 		try{
-			short lsaupdatemsg = 1;
-			String dontForwardTo = rd.simulatedIPAddress;
+			// remove all other links from current router's LSA
+			// only keep itself in LSA
+			lsd.removeAllLinks(rd.simulatedIPAddress);
+			bumpOwnSequence();
+			// only the LSAs changed here have to go out, the rest is known already
+			List<String> changed = new ArrayList<String>();
+			changed.add(rd.simulatedIPAddress);
 			
-			//send out message
-			for (int i = 0; i < ports.length; i++) {
-				// If null or already initialized skip
-				if (ports[i] != null && ports[i].router2.status == RouterStatus.TWO_WAY) {
-					SOSPFPacket updateMsg = new SOSPFPacket(lsaupdatemsg, dontForwardTo, dontForwardTo,
-							rd.simulatedIPAddress, ports[i].router2.simulatedIPAddress, rd.processIPAddress, rd.processPortNumber);
-					updateMsg.originalTrigger = true;
-					updateMsg.lsaArray = new Vector<LSA>();
-					// add all LSA of current router
-					for (LSA sendlsa: lsd._store.values()) updateMsg.lsaArray.add(sendlsa);
-					// start the thread to send LSAUPDATE and handle corresponding response
-					LSAUpdateSocket sendUpdate = new LSAUpdateSocket(ports[i], updateMsg);
-	
-					sendUpdate.start();
-					lsaupdates.add(sendUpdate);
+			// remove current router's LinkDescription from all other router's LSA
+			for (LSA rlsa: lsd.values()) {
+				if (lsd.removeLink(rlsa.linkStateID, rd.simulatedIPAddress)) {
+					lsd.incrementSequence(rlsa.linkStateID);
+					changed.add(rlsa.linkStateID);
 				}
 			}
+			
+			// send LSAupdate so that all other can delete current router from all LSA
+			VisitedSet visited = VisitedSet.EMPTY.plus(rd.simulatedIPAddress);
+			List<LSA> lsas = new ArrayList<LSA>();
+			for (String origin : changed) {
+				LSA lsa = lsd.get(origin);
+				// our own at MaxAge flushes it everywhere, and the neighbors drop us with it
+				if (lsa != null) lsas.add(origin.equals(rd.simulatedIPAddress) ? lsa.withAge(lsaMaxAge) : lsa);
+			}
+			
+			for (Link l : ports.links()) {
+				if (l.router2.status == RouterStatus.TWO_WAY) {
+					// nobody is left to answer an LSREQUEST
+					flooder.sendWhole(l.router2.simulatedIPAddress, changed);
+					flooder.enqueue(l, lsas, visited);
+				}
+			}
+			// no point in waiting for the window, we are about to exit
+			sends = flooder.flushAll();
 		}
 		finally{
 			writeLock.unlock();
 		}
 		
 		try {
-			for (LSAUpdateSocket h: lsaupdates) h.join();
-		} catch(InterruptedException e) {
-			System.out.println("Failed to wait for all threads sending LSAUPDATE");
+			awaitSends(sends, "LSAUPDATE");
+			// a restart comes back attached to the same neighbors
+			if (snapshotFile != null) writeSnapshot();
 	  	} finally {
 	  		System.exit(0);
 	  	}
 		
 	}
 
+	/**
+	 * attach without going through the terminal, see processAttach
+	 *
+	 * @return the port of the link, -1 if there is none
+	 */
+	public int attach(String processIP, short processPort, String simulatedIP, short weight) {
+		return processAttach(processIP, processPort, simulatedIP, weight);
+	}
+	
+	/**
+	 * start without going through the terminal, see processStart
+	 */
+	public void start() {
+		processStart();
+	}
+	
+	/**
+	 * @return the (linkStateID, seq) of every LSA in the link state database
+	 */
+	public List<LSAHeader> databaseSummary() {
+		List<LSAHeader> summary = new ArrayList<LSAHeader>();
+		for (LSA lsa : lsd.values()) summary.add(LSAHeader.of(lsa));
+		return summary;
+	}
+	
+	/**
+	 * stop talking to the neighbors and release the router's threads without telling anyone,
+	 * for routers sharing a JVM; a router in its own process quits instead. Shared executors
+	 * keep running, and what this router already scheduled on them runs against closed links
+	 */
+	public void shutdown() {
+		hellos.close();
+		wheel.close();
+		transport.close();
+		for (Link l : ports.links()) {
+			l.sendQueue.close();
+			l.connection.close();
+		}
+		if (snapshotTask != null) snapshotTask.cancel(false);
+		if (ownExecutors) {
+			timers.shutdownNow();
+			senders.shutdown();
+		}
+		if (snapshotFile != null) writeSnapshot();
+		if (metricsMBean) unregisterMetrics();
+	}
+	
+	// one MBean per router, so routers sharing a JVM are told apart by their simulated IP
+	private ObjectName metricsName() throws MalformedObjectNameException {
+		return new ObjectName("socs.network:type=Router,name=" + rd.simulatedIPAddress);
+	}
+	
+	private void registerMetrics() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName());
+		} catch (JMException e) {
+			System.out.println("Could not register the metrics MBean: " + e.getMessage());
+		}
+	}
+	
+	private void unregisterMetrics() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName());
+		} catch (JMException e) {
+			// never registered
+		}
+	}
+
 	public void terminal() {
 		try {
 			InputStreamReader isReader = new InputStreamReader(System.in);
 			BufferedReader br = new BufferedReader(isReader);
+			long opened = System.nanoTime();
 			System.out.print(">> ");
 			String command = br.readLine();
-			while (true) {
-				if (command.startsWith("detect ")) {
-					String[] cmdLine = command.split(" ");
-					processDetect(cmdLine[1]);
-				} else if (command.startsWith("lsd ")) {
-					System.out.println(lsd.toString());;
-				} else if (command.startsWith("disconnect ")) {
-					String[] cmdLine = command.split(" ");
-					processDisconnect(Short.parseShort(cmdLine[1]));
-				} else if (command.startsWith("quit")) {
-					processQuit();
-				} else if (command.startsWith("attach ")) {
-					String[] cmdLine = command.split(" ");
-					processAttach(cmdLine[1], Short.parseShort(cmdLine[2]), cmdLine[3], Short.parseShort(cmdLine[4]));
-				} else if (command.equals("start")) {
-					processStart();
-				} else if (command.startsWith("connect ")) {
-					String[] cmdLine = command.split(" ");
-					processConnect(cmdLine[1], Short.parseShort(cmdLine[2]), cmdLine[3], Short.parseShort(cmdLine[4]));
-				} else if (command.equals("neighbors")) {
-					// output neighbors
-					processNeighbors();
-				} else if (command.equals("lsd")){
-					System.out.println(lsd.toString());
-					
-				} else if (command.equals("ports")){
-					for(Link l : ports){
-						if(l!= null) System.out.println(l.router2.simulatedIPAddress);
-					}
-				} else {
-					// invalid command
-					break;
-				}
+			while (command != null) {
+				execute(command.trim(), br, opened);
 				System.out.print(">> ");
 				command = br.readLine();
 			}
@@ -525,71 +1096,159 @@ public class Router {
 		}
 	}
 	
+	/**
+	 * run the commands of a script file as if they were typed, echoing each one; empty lines
+	 * and lines starting with # are skipped
+	 * <p/>
+	 * besides the terminal commands a script usually needs wait-converged, sleep and time,
+	 * see execute
+	 */
+	public void runScript(String path) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(path));
+		try {
+			long opened = System.nanoTime();
+			String command;
+			while ((command = br.readLine()) != null) {
+				command = command.trim();
+				if (command.isEmpty() || command.startsWith("#")) continue;
+				System.out.println(">> " + command);
+				execute(command, br, opened);
+			}
+		} finally {
+			br.close();
+		}
+	}
+	
+	/**
+	 * run one command of the terminal or of a script; a command that is unknown or has bad
+	 * arguments is reported and skipped
+	 * <p/>
+	 * attach-all and connect-all take one "processIP processPort simulatedIP weight [hello dead]"
+	 * per following line up to a line "end"; connect-all sends all HELLOs at once and waits for
+	 * the handshakes together. wait-converged [QUIET_MS] [TIMEOUT_MS] returns once the link
+	 * state database did not change for QUIET_MS, sleep MS pauses, time COMMAND reports how long
+	 * COMMAND took and elapsed the time since the terminal or script was opened.
+	 *
+	 * @param in where the lines of attach-all and connect-all come from
+	 * @param opened System.nanoTime() when the terminal or script was opened
+	 */
+	private void execute(String command, BufferedReader in, long opened) throws IOException {
+		try {
+			if (command.startsWith("detect --all ")) {
+				String[] cmdLine = command.split(" ");
+				processDetectAll(cmdLine[2], cmdLine.length > 3 ? Integer.parseInt(cmdLine[3]) : DEFAULT_DETECT_PATHS);
+			} else if (command.startsWith("detect ")) {
+				String[] cmdLine = command.split(" ");
+				processDetect(cmdLine[1]);
+			} else if (command.startsWith("lsd ")) {
+				System.out.println(lsd.toString());;
+			} else if (command.startsWith("disconnect ")) {
+				String[] cmdLine = command.split(" ");
+				processDisconnect(Short.parseShort(cmdLine[1]));
+			} else if (command.startsWith("quit")) {
+				processQuit();
+			} else if (command.startsWith("attach ")) {
+				String[] cmdLine = command.split(" ");
+				processAttach(cmdLine[1], Short.parseShort(cmdLine[2]), cmdLine[3], Short.parseShort(cmdLine[4]),
+						optionalInterval(cmdLine, 5, helloInterval), optionalInterval(cmdLine, 6, helloDeadInterval));
+			} else if (command.equals("start")) {
+				processStart();
+			} else if (command.startsWith("connect ")) {
+				String[] cmdLine = command.split(" ");
+				processConnect(cmdLine[1], Short.parseShort(cmdLine[2]), cmdLine[3], Short.parseShort(cmdLine[4]),
+						optionalInterval(cmdLine, 5, helloInterval), optionalInterval(cmdLine, 6, helloDeadInterval));
+			} else if (command.equals("attach-all")) {
+				processAttachAll(readBlock(in));
+			} else if (command.equals("connect-all")) {
+				processConnectAll(readBlock(in));
+			} else if (command.equals("neighbors")) {
+				// output neighbors
+				processNeighbors();
+			} else if (command.equals("lsd")){
+				System.out.println(lsd.toString());
+				
+			} else if (command.equals("stats")) {
+				System.out.print(metrics.report());
+			} else if (command.equals("routes")) {
+				processRoutes();
+			} else if (command.equals("ports")){
+				for(int port : ports.occupiedPorts()){
+					Link l = ports.get(port);
+					if(l!= null) System.out.println(port + " " + l.router2.simulatedIPAddress);
+				}
+			} else if (command.equals("wait-converged") || command.startsWith("wait-converged ")) {
+				String[] cmdLine = command.split(" ");
+				processWaitConverged(optionalInterval(cmdLine, 1, DEFAULT_CONVERGED_QUIET),
+						optionalInterval(cmdLine, 2, DEFAULT_CONVERGED_TIMEOUT));
+			} else if (command.startsWith("sleep ")) {
+				Thread.sleep(Long.parseLong(command.split(" ")[1]));
+			} else if (command.startsWith("time ")) {
+				long t = System.nanoTime();
+				execute(command.substring(5).trim(), in, opened);
+				System.out.println("took " + (System.nanoTime() - t) / 1000000L + " ms");
+			} else if (command.equals("elapsed")) {
+				System.out.println((System.nanoTime() - opened) / 1000000L + " ms since start of input");
+			} else if (!command.isEmpty()) {
+				System.out.println("Unknown command: " + command);
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("Invalid number in: " + command);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("Missing arguments in: " + command);
+		} catch (InterruptedException e) {
+			System.out.println("Interrupted: " + command);
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	// the lines following attach-all or connect-all up to "end", split into their fields
+	private static List<String[]> readBlock(BufferedReader in) throws IOException {
+		List<String[]> lines = new ArrayList<String[]>();
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.equals("end")) break;
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			lines.add(line.split("\\s+"));
+		}
+		return lines;
+	}
+	
+	// attach and connect may end with the link's HELLO and dead interval
+	private static long optionalInterval(String[] cmdLine, int i, long otherwise) {
+		return cmdLine.length > i ? Long.parseLong(cmdLine[i]) : otherwise;
+	}
+	
 
-	class HelloSocket extends Thread {
+	// sends one HELLO over the link's connection
+	class HelloSender implements Runnable {
 		// information to be sent
 		public String serverID;
-		public short portNum;
 		public RouterDescription rd2;
 		public Link btwlink;
 		public SOSPFPacket message;
 
-		public HelloSocket(Link btwlink, SOSPFPacket msg) {
+		public HelloSender(Link btwlink, SOSPFPacket msg) {
 			this.rd2 = btwlink.router2;
 			serverID = rd2.simulatedIPAddress;
-			portNum = rd2.processPortNumber;
 			message = msg;
 			this.btwlink = btwlink;
 		}
 
-		@Override
 		public void run() {
-			Socket client = null;
-			ObjectInputStream in = null;
-			ObjectOutputStream out = null; 
-			
-			try {				
-				client = new Socket(rd2.processIPAddress, portNum);
-
-				out = new ObjectOutputStream(client.getOutputStream());
-				out.writeObject(message);
-
-				// get response and check if it is HELLO
-				in = new ObjectInputStream(client.getInputStream());
-				SOSPFPacket response = (SOSPFPacket) in.readObject();
-
-				if (response.sospfType == 0) {
-					System.out.println("received HELLO from " + response.srcIP);
-
-					for (int i = 0; i < ports.length; i++) {
-						if (ports[i] != null && ports[i] != null && ports[i].router2.simulatedIPAddress.equals(serverID)) {
-							// set router2 status and send HELLO again
-							ports[i].router2.status = RouterStatus.TWO_WAY;
-							System.out.println("set " + ports[i].router2.simulatedIPAddress + " state to TWO_WAY");
-							out.writeObject(message);
-						}
-					}
-				}
-			} 
-			catch (ClassNotFoundException exp) {
-				System.out.println("No valid response message received");
-				// remove this neighbor from the list of ports
-				for (int i = 0; i < ports.length; i++) {
-					if (ports[i] != null && ports[i].router2.simulatedIPAddress.equals(serverID)) {
-						ports[i] = null;
-						break;
-					}
-				}
+			try {
+				// the neighbor answers over its own connection to us, see helloMessage
+				btwlink.connection.send(message);
+				metrics.helloSent(serverID);
 			} 
-			catch (Exception e) {
-				//e.printStackTrace();
+			catch (IOException e) {
 				System.out.println("Could not connect to " + serverID);
 				// remove this neighbor from the list of ports
-				for (int i = 0; i < ports.length; i++) {
-					if (ports[i] != null && ports[i].router2.simulatedIPAddress.equals(serverID)) {
-						ports[i] = null;
-						break;
-					}
+				writeLock.lock();
+				try {
+					removeFromPorts(btwlink);
+				} finally {
+					writeLock.unlock();
 				}
 			}// end of try block
 
@@ -597,53 +1256,35 @@ public class Router {
 	}
 	
 	
-	class LSAUpdateSocket extends Thread {
+	// sends one LSAUPDATE over the link's connection
+	class LSAUpdateSender implements Runnable {
 		
 		private Link link;
 		private SOSPFPacket msg;
 		
-		public LSAUpdateSocket (Link l, SOSPFPacket msg){
+		public LSAUpdateSender (Link l, SOSPFPacket msg){
 			link = l;
 			this.msg = msg;
 		}
 		
-		@Override
 		public void run(){
-			Socket client = null;
-			ObjectOutputStream out = null; 
-			
 			RouterDescription rd2 = link.router2;
 			
-			try {				
-				client = new Socket(rd2.processIPAddress, rd2.processPortNumber);
-
-				out = new ObjectOutputStream(client.getOutputStream());
-				out.writeObject(msg);
-
+			try {
+				link.connection.send(msg);
+				if (msg.sospfType == 1) metrics.lsupdateSent(rd2.simulatedIPAddress);
 			} 
-			catch (Exception e) {
+			catch (IOException e) {
+				// only thrown once the neighbor could not be reached for the whole dead interval
 				System.out.println("Could not connect to " + rd2.simulatedIPAddress);
-				
-
-				// remove from ports
-				for (int i = 0; i < ports.length; i++) {
-					if (ports[i] != null && ports[i].router2.simulatedIPAddress.equals(rd2.simulatedIPAddress)) {
-						ports[i] = null;
-					}
-				}
 
-				// remove rd2 from LSA of this router 
-				int removeIndex = -1;
-				for (LinkDescription d : lsd._store.get(rd.simulatedIPAddress).links) {
-					if (d.linkID.equals(rd.simulatedIPAddress)) {
-						removeIndex = lsd._store.get(rd.simulatedIPAddress).links.indexOf(d);
-					}
+				writeLock.lock();
+				try {
+					// the neighbor may have been dropped already, e.g. for its missing HELLOs
+					if (ports.contains(link)) dropNeighbor(link, false);
+				} finally {
+					writeLock.unlock();
 				}
-				if (removeIndex>-1) lsd._store.get(rd.simulatedIPAddress).links.remove(removeIndex);
-
-				// remove the LSA of rd2 from lsd
-				if (lsd._store.get(rd2.simulatedIPAddress)!=null) 
-					lsd._store.replace(rd2.simulatedIPAddress, null);
 
 			}//end of try block
 		}
@@ -651,406 +1292,380 @@ public class Router {
 	}
 	
 
-	class ClientMsgHandler extends Thread {
-		public Socket server;
-		ObjectInputStream in = null;
-		ObjectOutputStream out = null;
+	// protocol logic for every packet the server decoded, runs on the server's I/O threads
+	class ClientMsgHandler implements PacketHandler {
 		
 		private int hello = 0;
 		private int lsaupdate = 1;
+		private int lsrequest = 2;
+		private int dbdescription = 3;
+
+		public void handle(SOSPFPacket receivedMsg) {
+			Link replyTo = null;
+			SOSPFPacket description = null;
+
+			// every LSA was known already and left out when the packet was decoded, see SeenLsaFilter
+			if (receivedMsg.sospfType == lsaupdate && isEmpty(receivedMsg)) {
+				Link from = ports.find(receivedMsg.srcIP);
+				if (from != null) HelloService.heard(from);
+				metrics.decoded(receivedMsg.decodeNanos);
+				metrics.lsupdateReceived(receivedMsg.srcIP);
+				return;
+			}
 
-		public ClientMsgHandler(Socket serverS) {
-			server = serverS;
-		}
-
-		@Override
-		public void run() {
+			writeLock.lock();
 			
-			try {
-				
-				in = new ObjectInputStream(server.getInputStream());
-				out = new ObjectOutputStream(server.getOutputStream());
-
-				// check the received message
-				SOSPFPacket receivedMsg = (SOSPFPacket) in.readObject();
-
-				writeLock.lock();
+			try{
+				Link from = ports.find(receivedMsg.srcIP);
+				if (from != null) HelloService.heard(from);
+				metrics.decoded(receivedMsg.decodeNanos);
 				
-				try{
-					// Hello message
-					if (receivedMsg.sospfType == hello) {
-						helloMessage(receivedMsg);
+				// Hello message
+				if (receivedMsg.sospfType == hello) {
+					metrics.helloReceived(receivedMsg.srcIP);
+					replyTo = helloMessage(receivedMsg);
+					// the adjacency just came up, compare databases with the neighbor
+					if (replyTo != null && replyTo.router2.status == RouterStatus.TWO_WAY) {
+						description = createDescriptionMsg(replyTo);
 					}
-					else if (receivedMsg.sospfType == lsaupdate){
-						// handle lsaupdate
-						lsaupdateMessage(receivedMsg);
-					}
-				} finally {
-					writeLock.unlock();
 				}
-
-				System.out.print(">>");
-
-			} 
-			catch (ClassNotFoundException c) {
-				System.out.println("Valid response message not received");
-			} 
-			catch (Exception e) {
-				e.printStackTrace();
-
-			}
-			finally{
-				try{
-					in.close();
-					out.close();
-					server.close();
-					
-				} 
-				catch(Exception e){
-					System.out.println("Could not close server or I/O stream");
+				else if (receivedMsg.sospfType == lsaupdate){
+					// handle lsaupdate
+					metrics.lsupdateReceived(receivedMsg.srcIP);
+					lsaupdateMessage(receivedMsg);
+				}
+				else if (receivedMsg.sospfType == lsrequest) {
+					lsrequestMessage(receivedMsg);
+				}
+				else if (receivedMsg.sospfType == dbdescription) {
+					descriptionMessage(receivedMsg);
 				}
+			} finally {
+				writeLock.unlock();
 			}
+			
+			// only queued, the neighbor's send queue does the actual sending
+			if (replyTo != null) replyTo.sendQueue.submit(new HelloSender(replyTo, createHelloMsg(replyTo)));
+			// after the HELLO, so the neighbor is TWO_WAY by the time it asks for LSAs
+			if (description != null) replyTo.sendQueue.submit(new LSAUpdateSender(replyTo, description));
 
+			System.out.print(">>");
 		}
 		
-		private void helloMessage(SOSPFPacket receivedMsg){
-			RouterDescription neighbor = null;
-			int availableIndex = -1;
-			int currIndex = -1;
-
-			// respond message
-			SOSPFPacket response = new SOSPFPacket();
-			response.sospfType = 0;
-			response.routerID = rd.simulatedIPAddress;
-			response.srcIP = rd.simulatedIPAddress;
-			response.srcProcessIP = rd.processIPAddress;
-			response.srcProcessPort = rd.processPortNumber;
-
-			for (int i = 0; i < ports.length; i++) {
-				if (ports[i] == null) {
-					availableIndex = i;
-				}
-				else if (ports[i].router2.simulatedIPAddress.equals(receivedMsg.srcIP)) {
-					neighbor = ports[i].router2;
-					currIndex = i;
-				}
-			}
+		private boolean isEmpty(SOSPFPacket msg) {
+			return (msg.lsaArray == null || msg.lsaArray.isEmpty())
+					&& (msg.deltaArray == null || msg.deltaArray.isEmpty());
+		}
+		
+		/**
+		 * HELLO handshake, driven by the messages received:
+		 * unknown or new neighbor -> INIT and answer, INIT -> TWO_WAY and answer, TWO_WAY -> nothing to do
+		 * 
+		 * returns the link to answer with a HELLO, null if there is nothing to send
+		 */
+		private Link helloMessage(SOSPFPacket receivedMsg){
+			Link link = ports.find(receivedMsg.srcIP);
 
 			// handle not finding neighbor & not having empty slots
-			if (neighbor == null && availableIndex == -1) {
+			if (link == null && ports.isFull()) {
 				System.out.println("No available neighbor slots");
-				return; // reject & exit, close will happen in finally
+				return null; // reject
 			} 
-			else if (neighbor == null && availableIndex != -1) {
+			else if (link == null) {
 				// add neighbor to ports list
-				neighbor = new RouterDescription(receivedMsg.srcProcessIP, receivedMsg.srcProcessPort,
+				RouterDescription neighbor = new RouterDescription(receivedMsg.srcProcessIP, receivedMsg.srcProcessPort,
 						receivedMsg.srcIP);
-				ports[availableIndex] = new Link(rd, neighbor);
-				currIndex = availableIndex;
+				link = createLink(neighbor);
+				ports.add(link);
 			}
 
-			System.out.println("received HELLO from " + ports[currIndex].router2.simulatedIPAddress);
-			ports[currIndex].router2.status = RouterStatus.INIT;
-			System.out.println("set " + ports[currIndex].router2.simulatedIPAddress + " state to INIT");
-
-			response.dstIP = receivedMsg.srcIP;
-
-			SOSPFPacket secReceived;
+			System.out.println("received HELLO from " + link.router2.simulatedIPAddress);
 			
-			try {
-				out.writeObject(response);
-				secReceived = (SOSPFPacket) in.readObject();
-			} catch (Exception e){
-				System.out.println("Either couldn't send or recieve message");
-				return;
+			if (link.router2.status == null) {
+				link.router2.status = RouterStatus.INIT;
+				System.out.println("set " + link.router2.simulatedIPAddress + " state to INIT");
+				return link;
 			}
-
-			//Check hello message & from the same sourceIP as original
-			if (secReceived.sospfType == 0 && secReceived.srcIP.equals(receivedMsg.srcIP)) {
-				System.out.println("received HELLO from " + secReceived.srcIP);
-				
-				ports[currIndex].router2.status = RouterStatus.TWO_WAY;
-				System.out.println("set " + ports[currIndex].router2.simulatedIPAddress + " state to TWO_WAY");
+			else if (link.router2.status == RouterStatus.INIT) {
+				link.router2.status = RouterStatus.TWO_WAY;
+				System.out.println("set " + link.router2.simulatedIPAddress + " state to TWO_WAY");
 				
-				addLink(receivedMsg.srcIP, receivedMsg.srcProcessPort, ports[currIndex].weight);
+				addLink(receivedMsg.srcIP, receivedMsg.srcProcessPort, link.weight);
+				HelloService.heard(link);
+				neighborStateChanged.signalAll();
+				// many adjacencies in a row end up in the same origination, see startLSAUpdates
+				startLSAUpdates();
+				return link;
 			}
+			return null;
 		}
 	
 		private void addLink(String srcIP, short procPort, short weight){
-			LinkDescription newld = new LinkDescription();
-			newld.linkID = srcIP;
-			newld.portNum = procPort;
-			newld.tosMetrics = weight;
-			
-			lsd._store.get(rd.simulatedIPAddress).links.add(newld);
+			lsd.addLink(rd.simulatedIPAddress, new LinkDescription(srcIP, procPort, weight));
 		}
 
 		
 		private void lsaupdateMessage(SOSPFPacket msg){
-			//tracks if we should forward the message
-			boolean forward = false;	
-			//tracks if current router need to send an updated LSA of itself
-			boolean includeItself = false;	
+			// the LSAs installed or flushed, the only ones worth forwarding
+			Vector<LSA> fresh = new Vector<LSA>();
 			// tracks if current msg is for removing a neighbor of current router
 			boolean toRemove = false;
-			// tracks if current msg is for another router to quit
-			boolean toQuit = false;
 			
-			// if lsaArray contains two LSA and both has smaller size than those in current lsd
-			// and one of the two LSA belons to the current router
-			if (msg.lsaArray.size()==2 && isRemLSA(msg.lsaArray.get(0), msg) 
-					&& isRemLSA(msg.lsaArray.get(1), msg)
-					&& (msg.lsaArray.get(0).linkStateID.equals(rd.simulatedIPAddress) 
-					|| msg.lsaArray.get(1).linkStateID.equals(rd.simulatedIPAddress)))
-				toRemove = true;
+			// from here on only whole LSAs
+			if (msg.deltaArray != null) msg.lsaArray = applyDeltas(msg);
 			
-			// if there is a LSA in LSAUpdate message that has size 0, 
-			// then this is a message generated because a router quits
-			String rmvIP = "";
-			for (LSA cLsa: msg.lsaArray) {
-				if (cLsa.links.size()==0) {
-					toQuit = true;
-					rmvIP = new String(cLsa.linkStateID);
-				}
-			}
+			// a neighbor that disconnected sends back a newer version of our own LSA without the link to it,
+			// possibly coalesced with other LSAs
+			List<String> removedNeighbors = removedNeighbors(msg.lsaArray);
+			toRemove = !removedNeighbors.isEmpty();
 			
 			//loop through all LSAs received
 			for(LSA currMsgLSA : msg.lsaArray){			
+				// a router that quit or an LSA that aged out elsewhere, see LsaAging
+				if (currMsgLSA.lsaAge >= lsaMaxAge) {
+					if (flushMaxAged(currMsgLSA)) fresh.add(currMsgLSA);
+					continue;
+				}
+				
+				// SPF cannot settle a graph with negative weights, such an LSA is neither
+				// installed nor forwarded
+				if (hasNegativeWeight(currMsgLSA)) {
+					System.out.println("Dropping LSA of " + currMsgLSA.linkStateID + " with a negative link weight");
+					continue;
+				}
+				
 				//add LSA to database if not already there or update if newer
 				//check if it's ever TRUE that we need to forward the message
-				if(!forward) forward = addToDatabase(currMsgLSA); 
-				else if(lsd._store.get(currMsgLSA.linkStateID).lsaSeqNumber < currMsgLSA.lsaSeqNumber) 
-					lsd._store.replace(currMsgLSA.linkStateID, currMsgLSA);
-				
-				//check if it's ever TRUE that current router need to forward itself
-				if(!includeItself) includeItself = forwardItself(currMsgLSA); 
+				if(addToDatabase(currMsgLSA)) {
+					fresh.add(currMsgLSA);
+					metrics.lsaInstalled(msg.receivedNanos);
+				} else {
+					metrics.duplicateDropped();
+				}
 				
 				//add weight if not already stored in link
 				if(isNeighbor(currMsgLSA)) updateNeighborWeight(currMsgLSA);
 			}
 			
 
-			//if the LSA was new, we need to forward it
-			if(forward){
-				SOSPFPacket msgToSend = createForwardMsg(msg);
-				forwardLSAUpdate(msgToSend, msg.routerID);
-
-				//init our own LSA update when receiving the original trigger for lsaupdate
-				if(msg.originalTrigger) startLSAUpdates(false);	//false bc not original trigger but a response
-					
-				
+			//if an LSA was new, we need to forward it
+			if(!fresh.isEmpty()){
+				SOSPFPacket msgToSend = createForwardMsg(msg, fresh);
+				forwardLSAUpdate(msgToSend, visitedOf(msg));
 			}
 			
-			// create a new round of LSA update including only the latest version of itself
-			if(includeItself) startLSAUpdates(true);
-			
 			// remove the LinkDescription from current router's ports
-			if (toRemove) rmvFromPort(msg.lsaArray);
-			
-			// for quit()
-			if (toQuit) {
-				// remove that router from ports array
-				short tormv = -1;
-				for(short i=0; i<4; i++){
-					if(ports[i] != null && ports[i].router2.simulatedIPAddress.equals(rmvIP)) 
-						tormv = i;
+			if (toRemove) rmvFromPort(removedNeighbors);
+		}
+		
+		/**
+		 * drop the LSA a MaxAge instance was flooded for, and the neighbor if it was the one that
+		 * quit; a flush of our own LSA is answered with a newer instance
+		 *
+		 * @return true if our copy was flushed and the MaxAge instance has to be passed on
+		 */
+		private boolean flushMaxAged(LSA lsa) {
+			LSA current = lsd.get(lsa.linkStateID);
+			if (lsa.linkStateID.equals(rd.simulatedIPAddress)) {
+				if (current != null && lsa.lsaSeqNumber >= current.lsaSeqNumber) {
+					lsd.install(current.withSeqNumber(lsa.lsaSeqNumber));
+					startLSAUpdates();
 				}
-				if (tormv>-1) ports[tormv] = null;
-				
+				return false;
+			}
+			if (current == null || current.lsaSeqNumber > lsa.lsaSeqNumber) {
+				metrics.duplicateDropped();
+				return false;
+			}
+			lsd.remove(lsa.linkStateID);
+			removeFromPorts(lsa.linkStateID);
+			return true;
+		}
+		
+		// the LSAs of the message with its deltas applied to our copies, asking the sender for the
+		// full LSA when our copy is not the one a delta was computed from
+		private Vector<LSA> applyDeltas(SOSPFPacket msg) {
+			Vector<LSA> lsas = new Vector<LSA>();
+			if (msg.lsaArray != null) lsas.addAll(msg.lsaArray);
+			Vector<String> missing = new Vector<String>();
+			for (LSADelta delta : msg.deltaArray) {
+				LSA base = lsd.get(delta.linkStateID);
+				// already have this one or something newer
+				if (base != null && base.lsaSeqNumber >= delta.lsaSeqNumber) {
+					metrics.duplicateDropped();
+					continue;
+				}
+				LSA lsa = delta.applyTo(base);
+				if (lsa != null) lsas.add(lsa);
+				else missing.add(delta.linkStateID);
 			}
+			
+			requestLSAs(msg.srcIP, missing);
+			return lsas;
+		}
+		
+		// ask the neighbor for the full LSAs of these routers, answered with an LSAUPDATE
+		private void requestLSAs(String neighborIP, Vector<String> origins) {
+			Link link = ports.find(neighborIP);
+			if (origins.isEmpty() || link == null) return;
+			SOSPFPacket request = new SOSPFPacket((short) 2, rd.simulatedIPAddress, neighborIP,
+					rd.simulatedIPAddress, neighborIP, rd.processIPAddress, rd.processPortNumber);
+			request.lsaRequest = origins;
+			link.sendQueue.submit(new LSAUpdateSender(link, request));
 		}
 		
-		// to decide if this LSA of LSAUpdate message is to remove a LinkDescription
-		private boolean isRemLSA(LSA curLSA, SOSPFPacket message) {
-			return ( (lsd._store.get(message.lsaArray.get(0).linkStateID).lsaSeqNumber 
-					< message.lsaArray.get(0).lsaSeqNumber ) && 
-					(lsd._store.get(message.lsaArray.get(0).linkStateID).links.size() 
-							> message.lsaArray.get(0).links.size() ) );
+		// the (linkStateID, seq) of every LSA we have, for a neighbor that just became TWO_WAY
+		private SOSPFPacket createDescriptionMsg(Link link) {
+			String neighborIP = link.router2.simulatedIPAddress;
+			SOSPFPacket description = new SOSPFPacket((short) 3, rd.simulatedIPAddress, neighborIP,
+					rd.simulatedIPAddress, neighborIP, rd.processIPAddress, rd.processPortNumber);
+			description.dbSummary = new Vector<LSAHeader>(databaseSummary());
+			return description;
 		}
 		
-		private void forwardLSAUpdate(SOSPFPacket fwdMsg, String dontForwardTo){
-			LinkedList<LSAUpdateSocket> lsaupdates = new LinkedList<LSAUpdateSocket>();
+		// request whatever the neighbor has that we are missing or hold an older copy of,
+		// the neighbor does the same with our description
+		private void descriptionMessage(SOSPFPacket msg) {
+			if (msg.dbSummary == null) return;
+			Vector<String> missing = new Vector<String>();
+			for (LSAHeader header : msg.dbSummary) {
+				LSA stored = lsd.get(header.linkStateID);
+				if (stored == null || stored.lsaSeqNumber < header.lsaSeqNumber) missing.add(header.linkStateID);
+			}
+			requestLSAs(msg.srcIP, missing);
+		}
+		
+		// a neighbor could not apply a delta we sent, it gets the full LSAs it asks for
+		private void lsrequestMessage(SOSPFPacket msg) {
+			Link link = ports.find(msg.srcIP);
+			if (link == null || link.router2.status != RouterStatus.TWO_WAY || msg.lsaRequest == null) return;
+			
+			List<LSA> lsas = new ArrayList<LSA>();
+			for (String origin : msg.lsaRequest) {
+				LSA lsa = lsd.get(origin);
+				if (lsa != null) lsas.add(lsa);
+			}
+			if (lsas.isEmpty()) return;
+			
+			flooder.sendWhole(msg.srcIP, msg.lsaRequest);
+			flooder.enqueue(link, lsas, VisitedSet.EMPTY.plus(Arrays.asList(rd.simulatedIPAddress, msg.srcIP)));
+		}
+		
+		// the neighbors that dropped the link to us: the message carries a newer copy of our own LSA
+		// without the link to the neighbor, and the neighbor's LSA without the link to us, or we
+		// have that already and it was left out of the message
+		private List<String> removedNeighbors(List<LSA> lsaArray) {
+			List<String> removed = new ArrayList<String>();
+			LSA stored = lsd.get(rd.simulatedIPAddress);
+			for (LSA received : lsaArray) {
+				if (!received.linkStateID.equals(rd.simulatedIPAddress) || stored == null) continue;
+				if (received.lsaAge >= lsaMaxAge) continue;
+				if (received.lsaSeqNumber <= stored.lsaSeqNumber) continue;
+				for (LinkDescription ld : stored.links) {
+					if (received.linkTo(ld.linkID) != null) continue;
+					LSA other = null;
+					for (LSA l : lsaArray) {
+						if (l.linkStateID.equals(ld.linkID)) other = l;
+					}
+					if (other == null) other = lsd.get(ld.linkID);
+					if (other != null && other.linkTo(rd.simulatedIPAddress) == null) removed.add(ld.linkID);
+				}
+			}
+			return removed;
+		}
 
-			for(Link neighbor : ports){
+		
+		// queued with whatever else is waiting for the neighbor, see LsaFlooder
+		private void forwardLSAUpdate(SOSPFPacket fwdMsg, VisitedSet dontForwardTo){
+			for(Link neighbor : ports.links()){
 				// don't forward to non-neighbor ports
-				if(neighbor == null || neighbor.router2.status != RouterStatus.TWO_WAY) continue; 
-				// don't forward if this neighbor is contained in string dontForwardTo
-				if(checkIfDontforward(dontForwardTo,neighbor.router2.simulatedIPAddress)) continue; 
+				if(neighbor.router2.status != RouterStatus.TWO_WAY) continue; 
+				// don't forward if this neighbor is contained in dontForwardTo
+				if(dontForwardTo.contains(neighbor.router2.simulatedIPAddress)) continue; 
 
-				fwdMsg.dstIP = neighbor.router2.simulatedIPAddress;
-				LSAUpdateSocket sendUpdate = new LSAUpdateSocket(neighbor, fwdMsg);
-				sendUpdate.start();
-				lsaupdates.add(sendUpdate);		
+				flooder.enqueue(neighbor, fwdMsg.lsaArray, fwdMsg.visited);
 			}
-			
-			try {
-				for (LSAUpdateSocket h: lsaupdates){
-					h.join();
-				}
-			} catch(InterruptedException e) {
-				System.out.println("Failed to wait for all threads forwarding LSAUPDATE");
-		  	}
 		}
 		
 		
-		private boolean checkIfDontforward(String dontfwd, String rtIP) {
-			String[] dontfwdRouters = dontfwd.split("&");
-			for (String s: dontfwdRouters) {
-				if (s.equals(rtIP)) return true;
-			}
-			return false;
+		// packets of an older sender may come without a visited set
+		private VisitedSet visitedOf(SOSPFPacket msg) {
+			return msg.visited == null ? VisitedSet.EMPTY : msg.visited;
 		}
 		
 		
 		
-		private SOSPFPacket createForwardMsg(SOSPFPacket msg){
+		private SOSPFPacket createForwardMsg(SOSPFPacket msg, Vector<LSA> lsas){
 			
 			SOSPFPacket newMsg = new SOSPFPacket();
 			newMsg.srcProcessIP = rd.processIPAddress;
 			newMsg.srcProcessPort = rd.processPortNumber;
 			newMsg.srcIP = rd.simulatedIPAddress;	//should this be changed??
 			newMsg.sospfType = 1;
-			newMsg.lsaArray = msg.lsaArray;
-			
-			String dontForwardTo = msg.routerID;
-			String newDontForwardTo = dontForwardTo;
+			newMsg.lsaArray = lsas;
 			
-			for(Link neighbor : ports){
-				if(neighbor == null) { continue; }
-				
-				String neighborSimIP = neighbor.router2.simulatedIPAddress;
-				
-				//don't send to original sender and anyone in string
-				if(!dontForwardTo.contains(neighborSimIP)){
-					newDontForwardTo += "&" + neighborSimIP;
-				}
-								
+			//don't send to original sender and anyone already visited, nor to us and our neighbors,
+			//we forward to those ourselves
+			List<String> covered = new ArrayList<String>();
+			covered.add(rd.simulatedIPAddress);
+			// only the neighbors forwardLSAUpdate sends to, an INIT neighbor still needs the LSAs
+			for(Link neighbor : ports.links()){
+				if(neighbor.router2.status == RouterStatus.TWO_WAY) covered.add(neighbor.router2.simulatedIPAddress);
 			}
-			newMsg.routerID = newDontForwardTo;
-			newMsg.neighborID = newDontForwardTo;
+			newMsg.visited = visitedOf(msg).plus(covered);
+			newMsg.routerID = rd.simulatedIPAddress;
 			return newMsg;
 		}
 		
 		
 		private boolean isNeighbor(LSA lsa){
-			for(Link neighbor : ports){
-				if(neighbor != null && neighbor.router2.simulatedIPAddress.equals(lsa.linkStateID)){
-					return true;
-				}
-			}
-			
-			return false;
+			return ports.find(lsa.linkStateID) != null;
 		}
 		
-		// Given an array of LSA, check if that contains a previous neighbor of current router
-		// if so, remove that previous neighbor from ports
-		private void rmvFromPort(Vector<LSA> lsaArray) {
-			short tormv = -1;
-			for(short i=0; i<4; i++){
-				if(ports[i] != null && 
-						(ports[i].router2.simulatedIPAddress.equals(lsaArray.get(0).linkStateID) 
-						|| ports[i].router2.simulatedIPAddress.equals(lsaArray.get(1).linkStateID))){
-					tormv = i;
-				}
-			}
-			if (tormv>-1) ports[tormv] = null;
+		// remove the previous neighbors of current router from ports
+		private void rmvFromPort(List<String> neighbors) {
+			for (String neighbor : neighbors) removeFromPorts(neighbor);
 		}
 		
 		
 		private void updateNeighborWeight(LSA currMsgLSA){
+			// the weight given to attach wins, only links created by a HELLO learn it from the neighbor
+			Link link = ports.find(currMsgLSA.linkStateID);
+			if(link == null || link.weightKnown) return;
+			
 			// in case of currMsgLSA is for quit()
-			for(LinkDescription myNeighbor : lsd._store.get(rd.simulatedIPAddress).links){
-				// if LinkDescription already in LSA links
-				if(myNeighbor.linkID.equals(currMsgLSA.linkStateID)){
-					//Loop through to find weight in the neighbor's links
-					for(LinkDescription currMsgLSALink : currMsgLSA.links){
-						if(currMsgLSALink.linkID.equals(rd.simulatedIPAddress)){
-							myNeighbor.tosMetrics = (int)currMsgLSALink.tosMetrics;
-							break;
-						}
-					}
-								
+			//Loop through to find weight in the neighbor's links
+			for(LinkDescription currMsgLSALink : currMsgLSA.links){
+				if(currMsgLSALink.linkID.equals(rd.simulatedIPAddress)){
+					// only changes the link if it is already in our LSA links
+					link.weight = (short) currMsgLSALink.tosMetrics;
+					link.weightKnown = true;
+					lsd.setLinkWeight(rd.simulatedIPAddress, currMsgLSA.linkStateID, currMsgLSALink.tosMetrics);
+					// our LSA may already be out with the link's old weight
+					startLSAUpdates();
+					break;
 				}
 			}
 		}
 		
 		
-		private boolean addToDatabase(LSA currMsgLSA){
-			// if LSA is NOT in database, add it
-			if(lsd._store.get(currMsgLSA.linkStateID) == null){
-				return true;	//should forward bc LSA not in database
-			}
-			// if currMsgLSA's sequence number > the currMsgLSAently stored one, update the LSA
-			else if(lsd._store.get(currMsgLSA.linkStateID).lsaSeqNumber < currMsgLSA.lsaSeqNumber) {
-				lsd._store.replace(currMsgLSA.linkStateID, currMsgLSA);
-				return true;	// should forward bc LSA is newer
-			}
-			
-			return false;	//shouldn't forward
-		}
-
-			
-		private boolean forwardItself(LSA currMsgLSA){
-			if(lsd._store.get(currMsgLSA.linkStateID) == null){
-				// add this LSA into lsd of current router and prepare for forwarding LSA of current router
-				lsd._store.put(currMsgLSA.linkStateID, currMsgLSA);	
-				return true;	
+		private boolean hasNegativeWeight(LSA lsa) {
+			for (LinkDescription ld : lsa.links) {
+				if (ld.tosMetrics < 0) return true;
 			}
 			return false;
 		}
-
-			
 		
 		
-	}
-	
-
-	class MultiThreadedServer implements Runnable {
-		Thread t;
-		short port;
-		ServerSocket serverSocket;
-
-		MultiThreadedServer() {
-			this.port = rd.processPortNumber; // set port as the one from conf file
-
-			try {
-				this.serverSocket = new ServerSocket(port);
-			} catch (IOException e) {
-				System.out.println("Could not listen on port " + this.port);
-			} catch (Exception e) {
-				System.out.println("Multi-threaded server could not be created");
-			}
+		private boolean addToDatabase(LSA currMsgLSA){
+			// installed if it is NOT in database or newer than the stored one,
+			// either way it should be forwarded
+			return lsd.installIfNewer(currMsgLSA);
 		}
 
-		public void run() {
-			while (true) {
-				// New client request --> Create client handler to handle it
-				ClientMsgHandler ch;
-				try {
-					ch = new ClientMsgHandler(serverSocket.accept());
-					ch.start();
-				} catch (Exception e) {
-					System.out.println("Accept and client handler failed: " + port);
-				}
-			}
 			
-		}
 		
-		public void close(){
-			try{
-				serverSocket.close();
-			}
-			catch(Exception e){
-				System.out.println("couldn't close server socket");
-			}
-		}
-
-		public void start() {
-			if (t == null) {
-				t = new Thread(this);
-				t.start();
-			}
-		}
+		
 	}
 
 }
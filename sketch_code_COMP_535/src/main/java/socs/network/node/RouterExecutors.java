@@ -0,0 +1,36 @@
+package socs.network.node;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * the timer and sender threads a router runs on
+ * <p/>
+ * a router started on its own creates a set of its own with one timer thread; routers sharing
+ * a JVM, like the simulated ones, can share one set instead of each starting its own threads.
+ * A router leaves shutting down a shared set to whoever created it.
+ */
+public class RouterExecutors {
+
+  final ScheduledExecutorService timers;
+  final OutboundExecutor senders;
+
+  /**
+   * @param timerThreads  threads running the HELLO and LSA timers and the SPF runs
+   * @param senderThreads most HELLO and LSAUPDATE sends in flight at once, for all routers
+   */
+  public RouterExecutors(String name, int timerThreads, int senderThreads, boolean preferVirtualThreads) {
+    this(Executors.newScheduledThreadPool(timerThreads, new OutboundExecutor.DaemonThreadFactory(name + "-timer")),
+            new OutboundExecutor(name + "-send", senderThreads, preferVirtualThreads));
+  }
+
+  RouterExecutors(ScheduledExecutorService timers, OutboundExecutor senders) {
+    this.timers = timers;
+    this.senders = senders;
+  }
+
+  public void shutdown() {
+    timers.shutdownNow();
+    senders.shutdown();
+  }
+}
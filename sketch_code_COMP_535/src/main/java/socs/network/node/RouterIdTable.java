@@ -0,0 +1,73 @@
+package socs.network.node;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * dense int index for every router ID the link state database has seen
+ * <p/>
+ * IDs are interned when an LSA mentioning them is installed and keep their index as long as
+ * the table is in use, so SPF and the graphs it runs on only ever deal with ints. Interning is
+ * serialized, lookups are lock-free.
+ * <p/>
+ * a table only grows; once it holds far more IDs than the installed LSAs mention, the database
+ * numbers the live IDs again in a new table, see LinkStateDatabase.renumberIfStale
+ */
+class RouterIdTable {
+
+  private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<String, Integer>();
+  // index => ID, only the first size entries are used
+  private volatile String[] ids = new String[16];
+  private volatile int size = 0;
+  // size when the database finished filling the table from the live LSAs
+  private volatile int liveSize = 0;
+
+  /**
+   * @return the index of the ID, assigning the next free one if it is new
+   */
+  int intern(String id) {
+    Integer i = index.get(id);
+    if (i != null) return i;
+    synchronized (this) {
+      i = index.get(id);
+      if (i != null) return i;
+      int next = size;
+      if (next == ids.length) ids = Arrays.copyOf(ids, next * 2);
+      ids[next] = id;
+      size = next + 1;
+      // published last, whoever finds the index also sees the ID behind it
+      index.put(id, next);
+      return next;
+    }
+  }
+
+  /**
+   * @return -1 if the ID was never interned
+   */
+  int indexOf(String id) {
+    Integer i = index.get(id);
+    return i == null ? -1 : i;
+  }
+
+  String idOf(int i) {
+    return ids[i];
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * every ID interned so far is live, IDs interned from now on count as growth
+   */
+  void markLive() {
+    liveSize = size;
+  }
+
+  /**
+   * @return the IDs interned since markLive, all of them if it was never called
+   */
+  int grownSinceLive() {
+    return size - liveSize;
+  }
+}
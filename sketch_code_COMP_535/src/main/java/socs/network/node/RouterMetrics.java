@@ -0,0 +1,189 @@
+package socs.network.node;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * protocol counters and timings of one router, for the stats command and JMX
+ * <p/>
+ * everything is recorded on the I/O, sender and timer threads as it happens, so the counters
+ * are LongAdders and the histograms lock-free
+ */
+public class RouterMetrics implements RouterMetricsMBean {
+
+  static final class NeighborCounters {
+    final LongAdder helloSent = new LongAdder();
+    final LongAdder helloReceived = new LongAdder();
+    final LongAdder lsupdateSent = new LongAdder();
+    final LongAdder lsupdateReceived = new LongAdder();
+  }
+
+  // simulated IP => counters, neighbors that went away keep theirs
+  private final ConcurrentHashMap<String, NeighborCounters> neighbors =
+          new ConcurrentHashMap<String, NeighborCounters>();
+  private final LongAdder duplicatesDropped = new LongAdder();
+  private final LongAdder lsasInstalled = new LongAdder();
+  private final LongAdder seenLsaHits = new LongAdder();
+  private final LongAdder seenLsaMisses = new LongAdder();
+
+  // one record per SPF run, full or incremental
+  final LatencyHistogram spf = new LatencyHistogram();
+  // bytes of a frame to a packet
+  final LatencyHistogram decode = new LatencyHistogram();
+  // a received LSA from the end of its packet's decoding to being in the database
+  final LatencyHistogram install = new LatencyHistogram();
+
+  private NeighborCounters neighbor(String ip) {
+    NeighborCounters c = neighbors.get(ip);
+    if (c == null) {
+      NeighborCounters added = new NeighborCounters();
+      c = neighbors.putIfAbsent(ip, added);
+      if (c == null) c = added;
+    }
+    return c;
+  }
+
+  void helloSent(String neighborIP) {
+    neighbor(neighborIP).helloSent.increment();
+  }
+
+  void helloReceived(String neighborIP) {
+    neighbor(neighborIP).helloReceived.increment();
+  }
+
+  void lsupdateSent(String neighborIP) {
+    neighbor(neighborIP).lsupdateSent.increment();
+  }
+
+  void lsupdateReceived(String neighborIP) {
+    neighbor(neighborIP).lsupdateReceived.increment();
+  }
+
+  /**
+   * an LSA that was not newer than our copy
+   */
+  void duplicateDropped() {
+    duplicatesDropped.increment();
+  }
+
+  /**
+   * an LSA looked up while its packet was decoded, dropped right there if it was known
+   */
+  void seenLsa(boolean known) {
+    (known ? seenLsaHits : seenLsaMisses).increment();
+  }
+
+  /**
+   * @param receivedNanos System.nanoTime() when the LSA's packet was decoded, 0 if unknown
+   */
+  void lsaInstalled(long receivedNanos) {
+    lsasInstalled.increment();
+    if (receivedNanos != 0) install.record(System.nanoTime() - receivedNanos);
+  }
+
+  void decoded(long nanos) {
+    if (nanos > 0) decode.record(nanos);
+  }
+
+  void spfRun(long nanos) {
+    spf.record(nanos);
+  }
+
+  public long getHellosSent() {
+    long n = 0;
+    for (NeighborCounters c : neighbors.values()) n += c.helloSent.sum();
+    return n;
+  }
+
+  public long getHellosReceived() {
+    long n = 0;
+    for (NeighborCounters c : neighbors.values()) n += c.helloReceived.sum();
+    return n;
+  }
+
+  public long getLsUpdatesSent() {
+    long n = 0;
+    for (NeighborCounters c : neighbors.values()) n += c.lsupdateSent.sum();
+    return n;
+  }
+
+  public long getLsUpdatesReceived() {
+    long n = 0;
+    for (NeighborCounters c : neighbors.values()) n += c.lsupdateReceived.sum();
+    return n;
+  }
+
+  public long getDuplicatesDropped() {
+    return duplicatesDropped.sum();
+  }
+
+  public long getLsasInstalled() {
+    return lsasInstalled.sum();
+  }
+
+  public long getSeenLsaHits() {
+    return seenLsaHits.sum();
+  }
+
+  public long getSeenLsaMisses() {
+    return seenLsaMisses.sum();
+  }
+
+  public long getSpfRuns() {
+    return spf.count();
+  }
+
+  public double getSpfMeanMicros() {
+    return spf.meanMicros();
+  }
+
+  public double getSpfP99Micros() {
+    return spf.percentileMicros(99);
+  }
+
+  public double getDecodeMeanMicros() {
+    return decode.meanMicros();
+  }
+
+  public double getDecodeP99Micros() {
+    return decode.percentileMicros(99);
+  }
+
+  public double getInstallMeanMicros() {
+    return install.meanMicros();
+  }
+
+  public double getInstallP99Micros() {
+    return install.percentileMicros(99);
+  }
+
+  public String[] getNeighbors() {
+    TreeMap<String, NeighborCounters> sorted = new TreeMap<String, NeighborCounters>(neighbors);
+    String[] lines = new String[sorted.size()];
+    int i = 0;
+    for (Map.Entry<String, NeighborCounters> e : sorted.entrySet()) {
+      NeighborCounters c = e.getValue();
+      lines[i++] = e.getKey() + "\tHELLO sent " + c.helloSent.sum() + " received " + c.helloReceived.sum()
+              + "\tLSUPDATE sent " + c.lsupdateSent.sum() + " received " + c.lsupdateReceived.sum();
+    }
+    return lines;
+  }
+
+  public String report() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("HELLO sent ").append(getHellosSent()).append(" received ").append(getHellosReceived()).append("\n");
+    sb.append("LSUPDATE sent ").append(getLsUpdatesSent()).append(" received ").append(getLsUpdatesReceived())
+            .append("\n");
+    sb.append("LSAs installed ").append(getLsasInstalled()).append(", duplicates dropped ")
+            .append(getDuplicatesDropped()).append("\n");
+    sb.append("LSAs dropped at decode ").append(getSeenLsaHits()).append(", passed on ")
+            .append(getSeenLsaMisses()).append("\n");
+    sb.append("SPF runs: ").append(spf).append("\n");
+    sb.append("packet decode: ").append(decode).append("\n");
+    sb.append("LSA receipt to install: ").append(install).append("\n");
+    for (String line : getNeighbors()) sb.append(line).append("\n");
+    return sb.toString();
+  }
+}
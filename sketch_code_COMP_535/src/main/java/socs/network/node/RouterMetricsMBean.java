@@ -0,0 +1,51 @@
+package socs.network.node;
+
+/**
+ * what a router exposes over JMX, as socs.network:type=Router,name=SIMULATED_IP
+ */
+public interface RouterMetricsMBean {
+
+  long getHellosSent();
+
+  long getHellosReceived();
+
+  long getLsUpdatesSent();
+
+  long getLsUpdatesReceived();
+
+  long getDuplicatesDropped();
+
+  long getLsasInstalled();
+
+  /**
+   * @return LSAs dropped while their packet was decoded because the database had them already
+   */
+  long getSeenLsaHits();
+
+  long getSeenLsaMisses();
+
+  long getSpfRuns();
+
+  double getSpfMeanMicros();
+
+  double getSpfP99Micros();
+
+  double getDecodeMeanMicros();
+
+  double getDecodeP99Micros();
+
+  double getInstallMeanMicros();
+
+  double getInstallP99Micros();
+
+  /**
+   * @return one line per neighbor: its simulated IP and the HELLOs and LSUPDATEs sent to and
+   *         received from it
+   */
+  String[] getNeighbors();
+
+  /**
+   * @return everything above as the stats command prints it
+   */
+  String report();
+}
@@ -0,0 +1,34 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LsaFilter;
+
+/**
+ * drops the LSAs a router has seen already while their packet is being decoded, on the I/O
+ * thread and without the router's lock
+ * <p/>
+ * what has been seen is the (linkStateID, lsaSeqNumber) of every LSA in the link state
+ * database's published snapshot, read lock-free, so the filter can never disagree with the
+ * database and forgets an LSA when the database drops it. MaxAge instances always pass, the
+ * router decides what to flush.
+ */
+class SeenLsaFilter implements LsaFilter {
+
+  private final LinkStateDatabase lsd;
+  private final int maxAge;
+  private final RouterMetrics metrics;
+
+  SeenLsaFilter(LinkStateDatabase lsd, int maxAge, RouterMetrics metrics) {
+    this.lsd = lsd;
+    this.maxAge = maxAge;
+    this.metrics = metrics;
+  }
+
+  public boolean isKnown(String linkStateID, int lsaSeqNumber, int lsaAge) {
+    if (lsaAge >= maxAge) return false;
+    LSA stored = lsd.get(linkStateID);
+    boolean known = stored != null && stored.lsaSeqNumber >= lsaSeqNumber;
+    metrics.seenLsa(known);
+    return known;
+  }
+}
@@ -0,0 +1,217 @@
+package socs.network.node;
+
+import socs.network.message.LsaFilter;
+import socs.network.message.MalformedPacketException;
+import socs.network.message.PacketFrames;
+import socs.network.message.SOSPFPacket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * non-blocking receive side of the router: a fixed number of I/O threads, each running its own
+ * selector, read the neighbors' persistent connections and cut them into frames
+ * <p/>
+ * the first I/O thread also accepts new connections and hands them out round-robin
+ */
+class SelectorServer {
+
+  private final short port;
+  private final PacketHandler handler;
+  private final LsaFilter known;
+  private final IoThread[] ioThreads;
+  private ServerSocketChannel serverChannel;
+  private int nextIoThread = 0;
+
+  SelectorServer(short port, int ioThreadCount, PacketHandler handler, LsaFilter known) throws IOException {
+    this.port = port;
+    this.handler = handler;
+    this.known = known;
+    this.ioThreads = new IoThread[ioThreadCount];
+
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().setReuseAddress(true);
+    serverChannel.socket().bind(new InetSocketAddress(port));
+    serverChannel.configureBlocking(false);
+
+    for (int i = 0; i < ioThreadCount; i++) {
+      ioThreads[i] = new IoThread("sospf-io-" + port + "-" + i, Selector.open());
+    }
+    serverChannel.register(ioThreads[0].selector, SelectionKey.OP_ACCEPT);
+  }
+
+  void start() {
+    for (IoThread t : ioThreads) t.start();
+  }
+
+  void close() {
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      System.out.println("couldn't close server socket");
+    }
+    for (IoThread t : ioThreads) t.shutdown();
+  }
+
+  private void accept() {
+    try {
+      SocketChannel channel;
+      while ((channel = serverChannel.accept()) != null) {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        ioThreads[nextIoThread].add(channel);
+        nextIoThread = (nextIoThread + 1) % ioThreads.length;
+      }
+    } catch (IOException e) {
+      System.out.println("Accept failed: " + port);
+    }
+  }
+
+  private class IoThread extends Thread {
+    final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+    private volatile boolean running = true;
+
+    IoThread(String name, Selector selector) {
+      super(name);
+      this.selector = selector;
+      setDaemon(true);
+    }
+
+    // channels are registered by the thread owning the selector, so it only has to be woken up
+    void add(SocketChannel channel) {
+      pending.add(channel);
+      selector.wakeup();
+    }
+
+    void shutdown() {
+      running = false;
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (running) {
+          selector.select();
+          registerPending();
+
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) continue;
+            if (key.isAcceptable()) {
+              accept();
+            } else if (key.isReadable()) {
+              read(key);
+            }
+          }
+        }
+      } catch (IOException e) {
+        System.out.println("Selector failed: " + port);
+      } catch (ClosedSelectorException e) {
+        // shut down
+      } finally {
+        closeAll();
+      }
+    }
+
+    private void registerPending() {
+      SocketChannel channel;
+      while ((channel = pending.poll()) != null) {
+        try {
+          channel.register(selector, SelectionKey.OP_READ, new FrameReader());
+        } catch (IOException e) {
+          closeQuietly(channel);
+        }
+      }
+    }
+
+    private void read(SelectionKey key) {
+      SocketChannel channel = (SocketChannel) key.channel();
+      FrameReader reader = (FrameReader) key.attachment();
+      try {
+        if (!reader.readFrom(channel)) {
+          // the neighbor closed its connection
+          key.cancel();
+          closeQuietly(channel);
+        }
+      } catch (MalformedPacketException e) {
+        System.out.println("Valid response message not received");
+        key.cancel();
+        closeQuietly(channel);
+      } catch (IOException e) {
+        key.cancel();
+        closeQuietly(channel);
+      }
+    }
+
+    private void closeAll() {
+      try {
+        for (SelectionKey key : selector.keys()) closeQuietly(key.channel());
+        selector.close();
+      } catch (IOException e) {
+        // nothing left to clean up
+      }
+    }
+  }
+
+  /**
+   * per-connection decoding state: the length prefix first, then the body of the frame
+   */
+  private class FrameReader {
+    private final ByteBuffer header = ByteBuffer.allocate(4);
+    private ByteBuffer body = null;
+
+    /**
+     * read what is available and hand every completed frame to the handler
+     *
+     * @return false once the neighbor closed the connection
+     */
+    boolean readFrom(SocketChannel channel) throws IOException {
+      while (true) {
+        ByteBuffer target = body == null ? header : body;
+        int n = channel.read(target);
+        if (n < 0) return false;
+        if (target.hasRemaining()) return true;
+
+        if (body == null) {
+          header.flip();
+          int length = header.getInt();
+          header.clear();
+          if (length < 1 || length > PacketFrames.MAX_FRAME_LENGTH) {
+            throw new MalformedPacketException("Invalid frame length " + length);
+          }
+          body = ByteBuffer.allocate(length);
+        } else {
+          SOSPFPacket packet = PacketFrames.decode(body.array(), 0, body.capacity(), known);
+          body = null;
+          try {
+            handler.handle(packet);
+          } catch (RuntimeException e) {
+            // a bug in handling one packet must not take down the I/O thread
+            e.printStackTrace();
+          }
+        }
+      }
+    }
+  }
+
+  private static void closeQuietly(Channel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // already closed
+    }
+  }
+}
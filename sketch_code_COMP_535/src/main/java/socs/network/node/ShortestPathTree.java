@@ -0,0 +1,81 @@
+package socs.network.node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * result of one SPF run rooted at this router: the distance and the previous hop of every
+ * router in the graph it was computed for
+ */
+class ShortestPathTree {
+
+  static final int UNREACHABLE = Integer.MAX_VALUE;
+  static final int NONE = -1;
+
+  final SpfGraph graph;
+  final int root;
+  final int[] distance;
+  final int[] parent;
+  private volatile EqualCostPaths equalCostPaths = null;
+
+  ShortestPathTree(SpfGraph graph, int root, int[] distance, int[] parent) {
+    this.graph = graph;
+    this.root = root;
+    this.distance = distance;
+    this.parent = parent;
+  }
+
+  boolean isReachable(String destinationIP) {
+    int node = graph.indexOf(destinationIP);
+    return node != -1 && distance[node] != UNREACHABLE;
+  }
+
+  /**
+   * format: source ip ->(weight) ip ->(weight) ... destination ip
+   *
+   * @return null if the destination is not reachable
+   */
+  String pathTo(String destinationIP) {
+    if (!isReachable(destinationIP)) return null;
+
+    int node = graph.indexOf(destinationIP);
+    StringBuilder sb = new StringBuilder(graph.idOf(node));
+    while (node != root) {
+      int prev = parent[node];
+      sb.insert(0, graph.idOf(prev) + " ->(" + (distance[node] - distance[prev]) + ") ");
+      node = prev;
+    }
+    return sb.toString();
+  }
+
+  /**
+   * the routers reachable from the root, the root itself left out
+   */
+  List<String> reachable() {
+    List<String> ips = new ArrayList<String>();
+    for (int node = 0; node < distance.length; node++) {
+      if (node != root && distance[node] != UNREACHABLE) ips.add(graph.idOf(node));
+    }
+    return ips;
+  }
+
+  /**
+   * @return UNREACHABLE if the destination cannot be reached
+   */
+  int distanceTo(String destinationIP) {
+    return isReachable(destinationIP) ? distance[graph.indexOf(destinationIP)] : UNREACHABLE;
+  }
+
+  /**
+   * all shortest paths instead of the one in parent, computed on first use
+   */
+  EqualCostPaths equalCostPaths() {
+    EqualCostPaths e = equalCostPaths;
+    if (e == null) {
+      // two threads may both compute it, either result is the same
+      e = new EqualCostPaths(this);
+      equalCostPaths = e;
+    }
+    return e;
+  }
+}
@@ -0,0 +1,99 @@
+package socs.network.node;
+
+import socs.network.message.LsaFilter;
+import socs.network.message.PacketCodec;
+import socs.network.message.PacketFrames;
+import socs.network.message.SOSPFPacket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * the transport of a router running in its own process: TCP connections read by a
+ * SelectorServer, and a UDP socket on the same port number for the HELLOs
+ */
+class SocketTransport implements Transport {
+
+  // HELLOs are a few dozen bytes, anything that does not fit is not one
+  static final int MAX_DATAGRAM = 1500;
+
+  private final PacketCodec codec;
+  private final long deadInterval;
+  private final int ioThreads;
+
+  private SelectorServer server = null;
+  private DatagramChannel channel = null;
+
+  /**
+   * @param deadInterval milliseconds a connection keeps trying to reach its neighbor
+   * @param ioThreads threads reading the connections
+   */
+  SocketTransport(PacketCodec codec, long deadInterval, int ioThreads) {
+    this.codec = codec;
+    this.deadInterval = deadInterval;
+    this.ioThreads = ioThreads;
+  }
+
+  public void start(String processIP, short processPort, PacketHandler packets, LsaFilter known,
+                    final PacketHandler datagrams) throws IOException {
+    server = new SelectorServer(processPort, ioThreads, packets, known);
+    server.start();
+
+    channel = DatagramChannel.open();
+    channel.socket().setReuseAddress(true);
+    channel.socket().bind(new InetSocketAddress(processPort));
+    new OutboundExecutor.DaemonThreadFactory("sospf-hello-" + processPort).newThread(new Runnable() {
+      public void run() {
+        receive(datagrams);
+      }
+    }).start();
+  }
+
+  public Connection connect(String processIP, short processPort) {
+    return new NeighborConnection(processIP, processPort, codec, deadInterval);
+  }
+
+  public void sendDatagram(String processIP, short processPort, SOSPFPacket packet) throws IOException {
+    channel.send(ByteBuffer.wrap(PacketFrames.encode(codec, packet)), new InetSocketAddress(processIP, processPort));
+  }
+
+  public void close() {
+    if (server != null) server.close();
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // nothing left to clean up
+      }
+    }
+  }
+
+  private void receive(PacketHandler datagrams) {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+    while (channel.isOpen()) {
+      try {
+        buffer.clear();
+        channel.receive(buffer);
+        buffer.flip();
+        // one whole frame per datagram, length prefix included
+        if (buffer.remaining() < 5 || buffer.getInt(0) != buffer.remaining() - 4) continue;
+        SOSPFPacket packet = PacketFrames.decode(buffer.array(), 4, buffer.remaining() - 4);
+        try {
+          datagrams.handle(packet);
+        } catch (RuntimeException e) {
+          // a bug in handling one datagram must not take down the receiving thread
+          e.printStackTrace();
+        }
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        // not a frame of ours, dropped like a lost datagram
+      } catch (RuntimeException e) {
+        // neither is one the decoder trips over
+      }
+    }
+  }
+}
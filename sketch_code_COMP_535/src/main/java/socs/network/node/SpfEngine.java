@@ -0,0 +1,166 @@
+package socs.network.node;
+
+import socs.network.util.IndexedMinHeap;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra over an SpfGraph using an indexed heap with decrease-key, O((V + E) log V) per run,
+ * plus an incremental mode that patches an existing tree after one router's links changed
+ */
+class SpfEngine {
+
+  private SpfEngine() {}
+
+  static ShortestPathTree compute(SpfGraph graph, int root) {
+    int n = graph.size();
+    int[] distance = new int[n];
+    int[] parent = new int[n];
+    Arrays.fill(distance, ShortestPathTree.UNREACHABLE);
+    Arrays.fill(parent, ShortestPathTree.NONE);
+
+    IndexedMinHeap heap = new IndexedMinHeap(n);
+    distance[root] = 0;
+    heap.insert(root, 0);
+    run(graph, heap, distance, parent);
+
+    return new ShortestPathTree(graph, root, distance, parent);
+  }
+
+  /**
+   * patch tree, computed for tree.graph, to be the tree of graph where only the out-going links
+   * of origin differ from tree.graph
+   * <p/>
+   * links whose weight went down (or that are new) are relaxed from origin; tree links whose
+   * weight went up (or that are gone) invalidate the subtree below them, which is then re-attached
+   * from the rest of the tree. Only nodes whose distance changes go through the heap.
+   *
+   * @return null if the change touches so much of the tree that a full run is cheaper
+   */
+  static ShortestPathTree update(ShortestPathTree tree, SpfGraph graph, int origin) {
+    int n = graph.size();
+    int oldN = tree.distance.length;
+    int[] distance = Arrays.copyOf(tree.distance, n);
+    int[] parent = Arrays.copyOf(tree.parent, n);
+    for (int i = oldN; i < n; i++) {
+      distance[i] = ShortestPathTree.UNREACHABLE;
+      parent[i] = ShortestPathTree.NONE;
+    }
+
+    // links of a router that cannot be reached do not take part in any shortest path
+    if (origin >= oldN || distance[origin] == ShortestPathTree.UNREACHABLE) {
+      return new ShortestPathTree(graph, tree.root, distance, parent);
+    }
+
+    SpfGraph old = tree.graph;
+
+    // tree links out of origin that got more expensive or disappeared
+    int[] invalidated = new int[old.degree(origin)];
+    int invalidatedCount = 0;
+    for (int e = old.offsets[origin]; e < old.offsets[origin + 1]; e++) {
+      int v = old.targets[e];
+      if (parent[v] != origin || (long) distance[origin] + old.weights[e] != distance[v]) continue;
+      if (minWeight(graph, origin, v) > old.weights[e]) invalidated[invalidatedCount++] = v;
+    }
+
+    IndexedMinHeap heap = new IndexedMinHeap(n);
+
+    if (invalidatedCount > 0) {
+      boolean[] detached = detachSubtrees(parent, invalidated, invalidatedCount);
+      if (detached == null) return null;
+
+      for (int x = 0; x < n; x++) {
+        if (!detached[x]) continue;
+        distance[x] = ShortestPathTree.UNREACHABLE;
+        parent[x] = ShortestPathTree.NONE;
+      }
+      // re-attach every detached node through its best link from the rest of the tree
+      for (int y = 0; y < n; y++) {
+        if (detached[y] || distance[y] == ShortestPathTree.UNREACHABLE) continue;
+        for (int e = graph.offsets[y]; e < graph.offsets[y + 1]; e++) {
+          if (detached[graph.targets[e]]) relax(heap, distance, parent, y, graph.targets[e], graph.weights[e]);
+        }
+      }
+    }
+
+    // links out of origin that got cheaper or are new
+    for (int e = graph.offsets[origin]; e < graph.offsets[origin + 1]; e++) {
+      relax(heap, distance, parent, origin, graph.targets[e], graph.weights[e]);
+    }
+
+    run(graph, heap, distance, parent);
+    return new ShortestPathTree(graph, tree.root, distance, parent);
+  }
+
+  // settle nodes in order of distance, relaxing only links that improve a distance
+  private static void run(SpfGraph graph, IndexedMinHeap heap, int[] distance, int[] parent) {
+    int[] offsets = graph.offsets;
+    int[] targets = graph.targets;
+    int[] weights = graph.weights;
+    while (!heap.isEmpty()) {
+      int u = heap.poll();
+      for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+        relax(heap, distance, parent, u, targets[e], weights[e]);
+      }
+    }
+  }
+
+  private static void relax(IndexedMinHeap heap, int[] distance, int[] parent, int u, int v, int weight) {
+    long candidate = (long) distance[u] + weight;
+    if (candidate < distance[v]) {
+      distance[v] = (int) candidate;
+      parent[v] = u;
+      heap.insertOrDecrease(v, distance[v]);
+    }
+  }
+
+  /**
+   * mark the given nodes and all of their descendants in the tree
+   *
+   * @return null if more than half of the nodes would be detached
+   */
+  private static boolean[] detachSubtrees(int[] parent, int[] roots, int rootCount) {
+    int n = parent.length;
+
+    // children lists threaded through two arrays
+    int[] firstChild = new int[n];
+    int[] nextSibling = new int[n];
+    Arrays.fill(firstChild, -1);
+    for (int x = 0; x < n; x++) {
+      int p = parent[x];
+      if (p == ShortestPathTree.NONE) continue;
+      nextSibling[x] = firstChild[p];
+      firstChild[p] = x;
+    }
+
+    boolean[] detached = new boolean[n];
+    int[] stack = new int[n];
+    int top = 0;
+    int count = 0;
+    for (int i = 0; i < rootCount; i++) {
+      if (detached[roots[i]]) continue;
+      detached[roots[i]] = true;
+      stack[top++] = roots[i];
+      count++;
+    }
+    while (top > 0) {
+      int x = stack[--top];
+      for (int c = firstChild[x]; c != -1; c = nextSibling[c]) {
+        if (detached[c]) continue;
+        detached[c] = true;
+        stack[top++] = c;
+        count++;
+      }
+    }
+    return count * 2 > n ? null : detached;
+  }
+
+  // cheapest link from u to v, MAX_VALUE if there is none
+  private static int minWeight(SpfGraph graph, int u, int v) {
+    int min = Integer.MAX_VALUE;
+    for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+      if (graph.targets[e] == v && graph.weights[e] < min) min = graph.weights[e];
+    }
+    return min;
+  }
+}
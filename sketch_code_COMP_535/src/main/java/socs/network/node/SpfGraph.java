@@ -0,0 +1,129 @@
+package socs.network.node;
+
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * adjacency of one version of the link state database in compressed sparse row form: the
+ * out-going links of router u are targets[offsets[u] .. offsets[u + 1]) with the matching
+ * weights
+ * <p/>
+ * routers are numbered by the snapshot's RouterIdTable, so a router keeps its index across
+ * versions sharing a table and a tree computed for one graph can be patched against the next
+ */
+class SpfGraph {
+
+  /**
+   * the out-going links of one LSA with the router IDs already interned, computed once when the
+   * LSA is installed
+   */
+  static final class Row {
+    final int origin;
+    final int[] targets;
+    final int[] weights;
+
+    private Row(int origin, int[] targets, int[] weights) {
+      this.origin = origin;
+      this.targets = targets;
+      this.weights = weights;
+    }
+
+    static Row of(LSA lsa, RouterIdTable ids) {
+      int[] t = new int[lsa.links.size()];
+      int[] w = new int[lsa.links.size()];
+      int deg = 0;
+      for (LinkDescription ld : lsa.links) {
+        // skip the entry a router keeps about itself
+        if (ld.linkID.equals(lsa.linkStateID)) continue;
+        t[deg] = ids.intern(ld.linkID);
+        w[deg] = ld.tosMetrics;
+        deg++;
+      }
+      return new Row(ids.intern(lsa.linkStateID), Arrays.copyOf(t, deg), Arrays.copyOf(w, deg));
+    }
+  }
+
+  private final RouterIdTable ids;
+
+  final int[] offsets;
+  final int[] targets;
+  final int[] weights;
+
+  private SpfGraph(RouterIdTable ids, int[] offsets, int[] targets, int[] weights) {
+    this.ids = ids;
+    this.offsets = offsets;
+    this.targets = targets;
+    this.weights = weights;
+  }
+
+  static SpfGraph build(Collection<Row> rows, RouterIdTable ids) {
+    int n = ids.size();
+    int[] offsets = new int[n + 1];
+    for (Row row : rows) offsets[row.origin + 1] = row.targets.length;
+    for (int u = 0; u < n; u++) offsets[u + 1] += offsets[u];
+
+    int[] targets = new int[offsets[n]];
+    int[] weights = new int[offsets[n]];
+    for (Row row : rows) {
+      System.arraycopy(row.targets, 0, targets, offsets[row.origin], row.targets.length);
+      System.arraycopy(row.weights, 0, weights, offsets[row.origin], row.weights.length);
+    }
+    return new SpfGraph(ids, offsets, targets, weights);
+  }
+
+  /**
+   * @return a copy of this graph where the links of origin are replaced by those of row,
+   *         row may be null if the origin's LSA was removed
+   */
+  SpfGraph withRow(int origin, Row row) {
+    int oldN = size();
+    int n = Math.max(oldN, ids.size());
+    int oldDegree = origin < oldN ? degree(origin) : 0;
+    int newDegree = row == null ? 0 : row.targets.length;
+    int delta = newDegree - oldDegree;
+
+    int[] newOffsets = new int[n + 1];
+    for (int u = 0; u <= n; u++) {
+      int base = offsets[Math.min(u, oldN)];
+      newOffsets[u] = u > origin ? base + delta : base;
+    }
+
+    int[] newTargets = new int[targets.length + delta];
+    int[] newWeights = new int[weights.length + delta];
+    int start = newOffsets[origin];
+    // rows before origin, origin's new row, rows after origin
+    System.arraycopy(targets, 0, newTargets, 0, start);
+    System.arraycopy(weights, 0, newWeights, 0, start);
+    if (row != null) {
+      System.arraycopy(row.targets, 0, newTargets, start, newDegree);
+      System.arraycopy(row.weights, 0, newWeights, start, newDegree);
+    }
+    int oldEnd = start + oldDegree;
+    System.arraycopy(targets, oldEnd, newTargets, start + newDegree, targets.length - oldEnd);
+    System.arraycopy(weights, oldEnd, newWeights, start + newDegree, weights.length - oldEnd);
+    return new SpfGraph(ids, newOffsets, newTargets, newWeights);
+  }
+
+  int size() {
+    return offsets.length - 1;
+  }
+
+  int degree(int u) {
+    return offsets[u + 1] - offsets[u];
+  }
+
+  /**
+   * @return -1 if the router is not part of this graph
+   */
+  int indexOf(String ip) {
+    int i = ids.indexOf(ip);
+    return i >= size() ? -1 : i;
+  }
+
+  String idOf(int i) {
+    return ids.idOf(i);
+  }
+}
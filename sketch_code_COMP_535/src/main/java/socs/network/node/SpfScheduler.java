@@ -0,0 +1,87 @@
+package socs.network.node;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * decides when a change to the link state database is followed by an SPF run, so a burst of
+ * LSAs after one topology event ends up in one run
+ * <p/>
+ * the first change after a quiet period runs SPF initialDelay ms later. A change arriving
+ * sooner than the hold time after the previous run waits until the hold time is over, and every
+ * run doubles the hold time up to maxHoldTime. Once nothing changed for maxHoldTime after a
+ * run, the hold time is back to holdTime. Changes during a run are picked up by the next one.
+ */
+class SpfScheduler {
+
+  private final ScheduledExecutorService executor;
+  private final long initialDelay;
+  private final long holdTime;
+  private final long maxHoldTime;
+  private final Runnable spf;
+  private final Clock clock;
+  private final Runnable run = new Runnable() {
+    public void run() {
+      runSpf();
+    }
+  };
+
+  // guarded by this
+  private boolean pending = false;
+  private long lastRun = 0;
+  private long currentHold;
+
+  /**
+   * @param spf computes and publishes the shortest path tree, called on the executor's thread
+   */
+  SpfScheduler(ScheduledExecutorService executor, long initialDelay, long holdTime, long maxHoldTime,
+               Runnable spf) {
+    this(executor, initialDelay, holdTime, maxHoldTime, spf, Clock.SYSTEM);
+  }
+
+  SpfScheduler(ScheduledExecutorService executor, long initialDelay, long holdTime, long maxHoldTime,
+               Runnable spf, Clock clock) {
+    this.executor = executor;
+    this.initialDelay = initialDelay;
+    this.holdTime = holdTime;
+    this.maxHoldTime = Math.max(holdTime, maxHoldTime);
+    this.currentHold = holdTime;
+    this.spf = spf;
+    this.clock = clock;
+  }
+
+  /**
+   * the database changed, schedule a run unless one is already waiting
+   */
+  synchronized void changed() {
+    if (pending) return;
+    long now = clock.millis();
+    if (now - lastRun >= maxHoldTime) currentHold = holdTime;
+    long delay = Math.max(initialDelay, lastRun + currentHold - now);
+    try {
+      executor.schedule(run, delay, TimeUnit.MILLISECONDS);
+      pending = true;
+    } catch (RejectedExecutionException e) {
+      // the router is shutting down
+    }
+  }
+
+  /**
+   * the hold time the next change would wait for at most, in ms
+   */
+  synchronized long holdTime() {
+    return currentHold;
+  }
+
+  private void runSpf() {
+    synchronized (this) {
+      // a change from now on is not covered by this run
+      pending = false;
+      long now = clock.millis();
+      if (now - lastRun < maxHoldTime) currentHold = Math.min(currentHold * 2, maxHoldTime);
+      lastRun = now;
+    }
+    spf.run();
+  }
+}
@@ -0,0 +1,107 @@
+package socs.network.node;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a hashed timer wheel: timeouts hang in the slot of their deadline tick, with the number of
+ * full turns still to wait, so scheduling and cancelling are O(1) and a tick only looks at one
+ * slot, however many timeouts there are
+ * <p/>
+ * the tasks run on the thread driving the wheel, outside its lock, and should be short
+ */
+class TimerWheel {
+
+  final class Timeout {
+    private final Runnable task;
+    private final int slot;
+    private long rounds;
+
+    private Timeout(Runnable task, int slot, long rounds) {
+      this.task = task;
+      this.slot = slot;
+      this.rounds = rounds;
+    }
+
+    /**
+     * the task will not run, if it did not already
+     */
+    void cancel() {
+      synchronized (TimerWheel.this) {
+        wheel.get(slot).remove(this);
+      }
+    }
+  }
+
+  private final long tickMillis;
+  private final List<LinkedHashSet<Timeout>> wheel;
+  private long tick = 0;
+  private ScheduledFuture<?> ticker = null;
+
+  TimerWheel(long tickMillis, int slots) {
+    this.tickMillis = tickMillis;
+    wheel = new ArrayList<LinkedHashSet<Timeout>>(slots);
+    for (int i = 0; i < slots; i++) wheel.add(new LinkedHashSet<Timeout>());
+  }
+
+  void start(ScheduledExecutorService timers) {
+    ticker = timers.scheduleAtFixedRate(new Runnable() {
+      public void run() {
+        tick();
+      }
+    }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void close() {
+    if (ticker != null) ticker.cancel(false);
+  }
+
+  /**
+   * run the task once delayMillis passed, rounded up to whole ticks
+   */
+  synchronized Timeout schedule(Runnable task, long delayMillis) {
+    long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+    long deadline = tick + ticks;
+    int slot = (int) (deadline % wheel.size());
+    // the slot comes round every wheel.size() ticks, the first time after (ticks - 1) % size + 1
+    Timeout t = new Timeout(task, slot, (ticks - 1) / wheel.size());
+    wheel.get(slot).add(t);
+    return t;
+  }
+
+  synchronized int size() {
+    int n = 0;
+    for (LinkedHashSet<Timeout> slot : wheel) n += slot.size();
+    return n;
+  }
+
+  void tick() {
+    List<Timeout> due = new ArrayList<Timeout>();
+    synchronized (this) {
+      tick++;
+      Iterator<Timeout> it = wheel.get((int) (tick % wheel.size())).iterator();
+      while (it.hasNext()) {
+        Timeout t = it.next();
+        if (t.rounds > 0) {
+          t.rounds--;
+        } else {
+          it.remove();
+          due.add(t);
+        }
+      }
+    }
+    for (Timeout t : due) {
+      try {
+        t.task.run();
+      } catch (RuntimeException e) {
+        // one failing task must not stop the wheel
+        e.printStackTrace();
+      }
+    }
+  }
+}
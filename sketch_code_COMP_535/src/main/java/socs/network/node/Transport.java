@@ -0,0 +1,44 @@
+package socs.network.node;
+
+import socs.network.message.LsaFilter;
+import socs.network.message.SOSPFPacket;
+
+import java.io.IOException;
+
+/**
+ * how a router reaches its neighbors: a connection per neighbor for the protocol packets and
+ * datagrams for the periodic HELLOs
+ * <p/>
+ * SocketTransport is what a router normally runs on; a simulation plugs in an in-memory one
+ * so many routers can share a JVM
+ */
+public interface Transport {
+
+  /**
+   * sending side of the link to one neighbor, packets arrive in the order they were sent
+   */
+  interface Connection {
+    /**
+     * @throws IOException if the neighbor could not be reached
+     */
+    void send(SOSPFPacket packet) throws IOException;
+
+    void close();
+  }
+
+  /**
+   * start handing everything sent to processIP:processPort to the handlers, packets of one
+   * connection in order and decoded without the LSAs the filter knows
+   */
+  void start(String processIP, short processPort, PacketHandler packets, LsaFilter known, PacketHandler datagrams)
+          throws IOException;
+
+  Connection connect(String processIP, short processPort);
+
+  /**
+   * best effort, a datagram may be lost without notice
+   */
+  void sendDatagram(String processIP, short processPort, SOSPFPacket packet) throws IOException;
+
+  void close();
+}
@@ -0,0 +1,94 @@
+package socs.network.sim;
+
+import socs.network.message.PacketCodec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * the wire between routers sharing a JVM: every router's MemoryTransport registers under its
+ * process address, and packets sent to that address are counted and queued for its handlers
+ * <p/>
+ * a small pool of delivery threads stands in for the I/O threads of all the routers
+ */
+class MemoryNetwork {
+
+  // HELLO, LSAUPDATE, LSREQUEST and DBDESCRIPTION
+  static final int PACKET_TYPES = 4;
+
+  private final ConcurrentHashMap<String, MemoryTransport> endpoints = new ConcurrentHashMap<String, MemoryTransport>();
+  final ExecutorService delivery;
+
+  // connection packets and their encoded size by sospfType, HELLO datagrams separately
+  final AtomicLongArray packets = new AtomicLongArray(PACKET_TYPES);
+  final AtomicLongArray bytes = new AtomicLongArray(PACKET_TYPES);
+  final AtomicLong datagrams = new AtomicLong();
+  final AtomicLong datagramBytes = new AtomicLong();
+
+  MemoryNetwork(int deliveryThreads) {
+    delivery = Executors.newFixedThreadPool(deliveryThreads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "sim-delivery-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  MemoryTransport transport(PacketCodec codec) {
+    return new MemoryTransport(this, codec);
+  }
+
+  static String address(String processIP, short processPort) {
+    return processIP + ":" + processPort;
+  }
+
+  void register(String address, MemoryTransport transport) {
+    endpoints.put(address, transport);
+  }
+
+  void unregister(String address, MemoryTransport transport) {
+    endpoints.remove(address, transport);
+  }
+
+  /**
+   * @return null if no router listens there
+   */
+  MemoryTransport find(String processIP, short processPort) {
+    return endpoints.get(address(processIP, processPort));
+  }
+
+  void countPacket(short sospfType, int length) {
+    int type = Math.min(Math.max(sospfType, 0), PACKET_TYPES - 1);
+    packets.incrementAndGet(type);
+    bytes.addAndGet(type, length);
+  }
+
+  void countDatagram(int length) {
+    datagrams.incrementAndGet();
+    datagramBytes.addAndGet(length);
+  }
+
+  long packetsSent() {
+    long total = 0;
+    for (int i = 0; i < PACKET_TYPES; i++) total += packets.get(i);
+    return total;
+  }
+
+  void shutdown() {
+    delivery.shutdownNow();
+    try {
+      delivery.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
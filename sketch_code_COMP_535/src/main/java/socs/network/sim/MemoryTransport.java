@@ -0,0 +1,131 @@
+package socs.network.sim;
+
+import socs.network.message.LsaFilter;
+import socs.network.message.PacketCodec;
+import socs.network.message.PacketFrames;
+import socs.network.message.SOSPFPacket;
+import socs.network.node.PacketHandler;
+import socs.network.node.Transport;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * a router's transport within a MemoryNetwork, queues instead of sockets
+ * <p/>
+ * packets still go through the router's codec, so the sizes counted are the ones a socket
+ * would carry and no router ever shares a packet object with another one. Everything that
+ * arrives for a router is handled one packet at a time in arrival order, which keeps the
+ * packets of every connection in order.
+ */
+class MemoryTransport implements Transport {
+
+  // packets handled per turn on a delivery thread before the router lets the others go first
+  static final int DELIVERY_BATCH = 64;
+
+  private final MemoryNetwork network;
+  private final PacketCodec codec;
+
+  private String address = null;
+  private volatile PacketHandler packets = null;
+  private volatile PacketHandler datagrams = null;
+  private volatile LsaFilter known = LsaFilter.NONE;
+
+  private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<Runnable>();
+  private final AtomicBoolean draining = new AtomicBoolean(false);
+  private final Runnable drainer = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  MemoryTransport(MemoryNetwork network, PacketCodec codec) {
+    this.network = network;
+    this.codec = codec;
+  }
+
+  public void start(String processIP, short processPort, PacketHandler packets, LsaFilter known,
+                    PacketHandler datagrams) {
+    this.packets = packets;
+    this.known = known;
+    this.datagrams = datagrams;
+    address = MemoryNetwork.address(processIP, processPort);
+    network.register(address, this);
+  }
+
+  public Connection connect(final String processIP, final short processPort) {
+    return new Connection() {
+      private boolean closed = false;
+
+      public synchronized void send(SOSPFPacket packet) throws IOException {
+        MemoryTransport to = network.find(processIP, processPort);
+        if (closed || to == null) {
+          throw new IOException("No router at " + MemoryNetwork.address(processIP, processPort));
+        }
+        byte[] frame = PacketFrames.encode(codec, packet);
+        network.countPacket(packet.sospfType, frame.length);
+        to.deliver(frame, false);
+      }
+
+      public synchronized void close() {
+        closed = true;
+      }
+    };
+  }
+
+  public void sendDatagram(String processIP, short processPort, SOSPFPacket packet) throws IOException {
+    MemoryTransport to = network.find(processIP, processPort);
+    // nobody there, the datagram is lost
+    if (to == null) return;
+    byte[] frame = PacketFrames.encode(codec, packet);
+    network.countDatagram(frame.length);
+    to.deliver(frame, true);
+  }
+
+  public void close() {
+    if (address != null) network.unregister(address, this);
+  }
+
+  private void deliver(final byte[] frame, final boolean datagram) {
+    inbox.add(new Runnable() {
+      public void run() {
+        SOSPFPacket packet;
+        try {
+          packet = PacketFrames.decode(frame, 4, frame.length - 4, datagram ? LsaFilter.NONE : known);
+        } catch (IOException e) {
+          System.err.println("Dropped undecodable packet for " + address + ": " + e.getMessage());
+          return;
+        }
+        (datagram ? datagrams : packets).handle(packet);
+      }
+    });
+    schedule();
+  }
+
+  private void schedule() {
+    if (!draining.compareAndSet(false, true)) return;
+    try {
+      network.delivery.execute(drainer);
+    } catch (RejectedExecutionException e) {
+      // the network is shut down, nothing is delivered any more
+    }
+  }
+
+  private void drain() {
+    for (int i = 0; i < DELIVERY_BATCH; i++) {
+      Runnable next = inbox.poll();
+      if (next == null) break;
+      try {
+        next.run();
+      } catch (RuntimeException e) {
+        // a bug in handling one packet must not take down the delivery thread
+        e.printStackTrace();
+      }
+    }
+    draining.set(false);
+    // whatever arrived after the last poll, or did not fit in this batch
+    if (!inbox.isEmpty()) schedule();
+  }
+}
@@ -0,0 +1,276 @@
+package socs.network.sim;
+
+import socs.network.message.LSAHeader;
+import socs.network.message.PacketFrames;
+import socs.network.node.Router;
+import socs.network.node.RouterExecutors;
+import socs.network.util.Configuration;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * runs many routers in one JVM over a MemoryNetwork, wired from a generated topology, and
+ * reports how long their link state databases took to agree and what it cost
+ * <p/>
+ * usage: Simulation grid ROWS COLS | geometric ROUTERS RADIUS | scalefree ROUTERS LINKS [options]
+ * <br/>
+ * options: seed=N, conf=PATH (router settings shared by all routers), timeout=MS, settle=MS
+ * <p/>
+ * the databases count as converged once every router holds exactly the LSAs of its connected
+ * component, each at the sequence number its originator holds, and no LSAUPDATE, LSREQUEST or
+ * database description was sent for settle milliseconds
+ * <p/>
+ * unless the conf says otherwise the routers send a HELLO every second and give up on a
+ * neighbor, or a handshake, only after a minute: thousands of routers sharing a few cores
+ * deliver slowly, and a neighbor dropped for that would never converge
+ * <p/>
+ * the routers share one pool of timer threads and one sender executor, and register no metrics
+ * MBean unless the conf sets socs.network.router.metricsMBean
+ */
+public class Simulation {
+
+  static final String PROCESS_IP = "127.1.1.0";
+  static final long POLL_INTERVAL = 20;
+  static final String HELLO_INTERVAL = "1000";
+  static final String HELLO_DEAD_INTERVAL = "60000";
+  static final String DEAD_INTERVAL = "60000";
+  // sends in flight at once for all routers together unless the conf sets senderThreads
+  static final int SENDER_THREADS_PER_CORE = 4;
+
+  private final Topology topology;
+  private final Configuration shared;
+  private final String confPath;
+  private final long timeout;
+  private final long settle;
+  private final MemoryNetwork network;
+  private final Router[] routers;
+  private final RouterExecutors executors;
+
+  Simulation(Topology topology, String confPath, long timeout, long settle) {
+    this.topology = topology;
+    this.confPath = confPath;
+    this.shared = confPath == null ? new Configuration() : new Configuration(confPath);
+    this.timeout = timeout;
+    this.settle = settle;
+    int cores = Runtime.getRuntime().availableProcessors();
+    this.network = new MemoryNetwork(cores);
+    this.routers = new Router[topology.size];
+    this.executors = new RouterExecutors("sim", cores,
+            shared.hasPath("socs.network.router.senderThreads")
+                    ? shared.getInt("socs.network.router.senderThreads") : SENDER_THREADS_PER_CORE * cores,
+            !shared.hasPath("socs.network.router.virtualThreads") || shared.getBoolean("socs.network.router.virtualThreads"));
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.out.println("usage: Simulation grid ROWS COLS | geometric ROUTERS RADIUS | scalefree ROUTERS LINKS"
+              + " [seed=N] [conf=PATH] [timeout=MS] [settle=MS]");
+      System.exit(1);
+    }
+    HashMap<String, String> options = new HashMap<String, String>();
+    for (int i = 3; i < args.length; i++) {
+      int eq = args[i].indexOf('=');
+      if (eq < 0) throw new IllegalArgumentException("Option without value: " + args[i]);
+      options.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+    }
+    Random random = new Random(options.containsKey("seed") ? Long.parseLong(options.get("seed")) : 1);
+
+    Topology topology;
+    if (args[0].equals("grid")) {
+      topology = Topology.grid(Integer.parseInt(args[1]), Integer.parseInt(args[2]), random);
+    } else if (args[0].equals("geometric")) {
+      topology = Topology.randomGeometric(Integer.parseInt(args[1]), Double.parseDouble(args[2]), random);
+    } else if (args[0].equals("scalefree")) {
+      topology = Topology.scaleFree(Integer.parseInt(args[1]), Integer.parseInt(args[2]), random);
+    } else {
+      throw new IllegalArgumentException("Unknown topology " + args[0]);
+    }
+
+    Simulation simulation = new Simulation(topology, options.get("conf"),
+            options.containsKey("timeout") ? Long.parseLong(options.get("timeout")) : 60000,
+            options.containsKey("settle") ? Long.parseLong(options.get("settle")) : 500);
+    simulation.run();
+    System.exit(0);
+  }
+
+  void run() throws Exception {
+    PrintStream report = System.out;
+    report.println("topology: " + topology);
+
+    // the routers talk a lot on the terminal, nobody reads it here
+    System.setOut(new PrintStream(new OutputStream() {
+      public void write(int b) {
+      }
+
+      public void write(byte[] b, int off, int len) {
+      }
+    }));
+    try {
+      long created = System.nanoTime();
+      createRouters();
+      attachAll();
+      report.println("routers created and attached in " + millisSince(created) + " ms");
+
+      long started = System.nanoTime();
+      startAll();
+      report.println("all routers started in " + millisSince(started) + " ms");
+
+      long converged = awaitConvergence(started);
+      if (converged < 0) {
+        report.println("NOT converged within " + timeout + " ms");
+      } else {
+        report.println("converged " + converged + " ms after the first start");
+      }
+      report.println("routers with a consistent database: " + consistentRouters() + "/" + routers.length);
+      printMessages(report);
+    } finally {
+      // nothing is delivered any more before the routers go
+      network.shutdown();
+      for (Router r : routers) {
+        if (r != null) r.shutdown();
+      }
+      executors.shutdown();
+      System.setOut(report);
+    }
+  }
+
+  private void createRouters() {
+    String codec = shared.hasPath("socs.network.router.codec") ? shared.getString("socs.network.router.codec") : "java";
+    int maxNeighbors = Math.max(topology.maxDegree(), shared.hasPath("socs.network.router.maxNeighbors")
+            ? shared.getInt("socs.network.router.maxNeighbors") : 0);
+    for (int i = 0; i < routers.length; i++) {
+      Configuration config = confPath == null ? new Configuration() : new Configuration(confPath);
+      config.addEntry("socs.network.router.ip", Topology.address(i));
+      config.addEntry("socs.network.router.port", String.valueOf(port(i)));
+      config.addEntry("socs.network.router.maxNeighbors", String.valueOf(maxNeighbors));
+      if (!config.hasPath("socs.network.router.deadInterval")) {
+        config.addEntry("socs.network.router.deadInterval", DEAD_INTERVAL);
+      }
+      if (!config.hasPath("socs.network.router.helloInterval")) {
+        config.addEntry("socs.network.router.helloInterval", HELLO_INTERVAL);
+      }
+      if (!config.hasPath("socs.network.router.helloDeadInterval")) {
+        config.addEntry("socs.network.router.helloDeadInterval", HELLO_DEAD_INTERVAL);
+      }
+      if (!config.hasPath("socs.network.router.metricsMBean")) {
+        config.addEntry("socs.network.router.metricsMBean", "false");
+      }
+      routers[i] = new Router(config, network.transport(PacketFrames.codec(codec)), executors);
+    }
+  }
+
+  // both ends know the link and its weight before anyone starts
+  private void attachAll() {
+    for (int[] l : topology.links) {
+      routers[l[0]].attach(PROCESS_IP, port(l[1]), Topology.address(l[1]), (short) l[2]);
+      routers[l[1]].attach(PROCESS_IP, port(l[0]), Topology.address(l[0]), (short) l[2]);
+    }
+  }
+
+  // start blocks until the router's handshakes are done, so the routers start side by side
+  private void startAll() throws Exception {
+    ExecutorService starters = Executors.newFixedThreadPool(Math.min(routers.length, 64));
+    try {
+      List<Future<?>> starts = new ArrayList<Future<?>>();
+      for (final Router r : routers) {
+        starts.add(starters.submit(new Runnable() {
+          public void run() {
+            r.start();
+          }
+        }));
+      }
+      for (Future<?> f : starts) f.get();
+    } finally {
+      starters.shutdown();
+    }
+  }
+
+  /**
+   * @return milliseconds from start until the databases converged, -1 if they did not within
+   *         the timeout
+   */
+  private long awaitConvergence(long start) throws InterruptedException {
+    long deadline = start + timeout * 1000000L;
+    long consistentSince = -1;
+    long lastCount = -1;
+    while (System.nanoTime() < deadline) {
+      long count = floodPackets();
+      boolean consistent = consistentRouters() == routers.length;
+      long now = System.nanoTime();
+      if (!consistent || count != lastCount) consistentSince = consistent ? now : -1;
+      lastCount = count;
+      if (consistentSince >= 0 && now - consistentSince >= settle * 1000000L) {
+        return (consistentSince - start) / 1000000L;
+      }
+      Thread.sleep(POLL_INTERVAL);
+    }
+    return -1;
+  }
+
+  private long floodPackets() {
+    return network.packetsSent() - network.packets.get(0);
+  }
+
+  /**
+   * @return how many routers hold exactly the LSAs of their component at the originators'
+   *         sequence numbers
+   */
+  private int consistentRouters() {
+    List<Map<String, Integer>> databases = new ArrayList<Map<String, Integer>>();
+    for (Router r : routers) {
+      Map<String, Integer> db = new HashMap<String, Integer>();
+      for (LSAHeader h : r.databaseSummary()) db.put(h.linkStateID, h.lsaSeqNumber);
+      databases.add(db);
+    }
+
+    int[] component = topology.components();
+    HashMap<Integer, List<Integer>> members = new HashMap<Integer, List<Integer>>();
+    for (int i = 0; i < routers.length; i++) {
+      List<Integer> m = members.get(component[i]);
+      if (m == null) {
+        m = new ArrayList<Integer>();
+        members.put(component[i], m);
+      }
+      m.add(i);
+    }
+
+    int consistent = 0;
+    for (int i = 0; i < routers.length; i++) {
+      Map<String, Integer> db = databases.get(i);
+      List<Integer> m = members.get(component[i]);
+      boolean ok = db.size() == m.size();
+      for (int j = 0; ok && j < m.size(); j++) {
+        String origin = Topology.address(m.get(j));
+        Integer own = databases.get(m.get(j)).get(origin);
+        ok = own != null && own.equals(db.get(origin));
+      }
+      if (ok) consistent++;
+    }
+    return consistent;
+  }
+
+  private void printMessages(PrintStream report) {
+    String[] names = {"HELLO", "LSAUPDATE", "LSREQUEST", "DBDESCRIPTION"};
+    for (int i = 0; i < MemoryNetwork.PACKET_TYPES; i++) {
+      report.println(names[i] + ": " + network.packets.get(i) + " packets, " + network.bytes.get(i) + " bytes");
+    }
+    report.println("HELLO datagrams: " + network.datagrams.get() + ", " + network.datagramBytes.get() + " bytes");
+  }
+
+  private static short port(int i) {
+    return (short) (i + 1);
+  }
+
+  private static long millisSince(long nanos) {
+    return (System.nanoTime() - nanos) / 1000000L;
+  }
+}
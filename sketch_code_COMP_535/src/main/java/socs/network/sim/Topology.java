@@ -0,0 +1,158 @@
+package socs.network.sim;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * an undirected weighted graph of routers 0 .. size-1 to wire a simulation from
+ */
+public class Topology {
+
+  static final int MAX_WEIGHT = 10;
+
+  final String name;
+  final int size;
+  // {u, v, weight} with u < v, each link once
+  final List<int[]> links = new ArrayList<int[]>();
+  private final HashSet<Long> linked = new HashSet<Long>();
+  private final int[] degree;
+
+  private Topology(String name, int size) {
+    this.name = name;
+    this.size = size;
+    this.degree = new int[size];
+  }
+
+  /**
+   * every router linked to the ones left, right, above and below it
+   */
+  static Topology grid(int rows, int cols, Random random) {
+    Topology t = new Topology("grid " + rows + "x" + cols, rows * cols);
+    for (int r = 0; r < rows; r++) {
+      for (int c = 0; c < cols; c++) {
+        int u = r * cols + c;
+        if (c + 1 < cols) t.link(u, u + 1, random);
+        if (r + 1 < rows) t.link(u, u + cols, random);
+      }
+    }
+    return t;
+  }
+
+  /**
+   * routers placed uniformly in the unit square, linked to every router within radius;
+   * may come out disconnected
+   */
+  static Topology randomGeometric(int size, double radius, Random random) {
+    Topology t = new Topology("random geometric n=" + size + " r=" + radius, size);
+    double[] x = new double[size];
+    double[] y = new double[size];
+    for (int i = 0; i < size; i++) {
+      x[i] = random.nextDouble();
+      y[i] = random.nextDouble();
+    }
+    for (int u = 0; u < size; u++) {
+      for (int v = u + 1; v < size; v++) {
+        double dx = x[u] - x[v];
+        double dy = y[u] - y[v];
+        if (dx * dx + dy * dy <= radius * radius) t.link(u, v, random);
+      }
+    }
+    return t;
+  }
+
+  /**
+   * Barabasi-Albert preferential attachment: a clique of linksPerRouter + 1 routers, then every
+   * further router links to linksPerRouter distinct routers picked in proportion to their degree
+   */
+  static Topology scaleFree(int size, int linksPerRouter, Random random) {
+    Topology t = new Topology("scale-free n=" + size + " m=" + linksPerRouter, size);
+    // every router appears once per link it has, so a uniform pick is a pick by degree
+    int seed = Math.min(linksPerRouter + 1, size);
+    int[] ends = new int[2 * linksPerRouter * size + seed * seed];
+    int endCount = 0;
+    for (int u = 0; u < seed; u++) {
+      for (int v = u + 1; v < seed; v++) {
+        t.link(u, v, random);
+        ends[endCount++] = u;
+        ends[endCount++] = v;
+      }
+    }
+    for (int u = seed; u < size; u++) {
+      HashSet<Integer> targets = new HashSet<Integer>();
+      while (targets.size() < Math.min(linksPerRouter, u)) {
+        targets.add(endCount == 0 ? random.nextInt(u) : ends[random.nextInt(endCount)]);
+      }
+      for (int v : targets) {
+        t.link(v, u, random);
+        ends[endCount++] = u;
+        ends[endCount++] = v;
+      }
+    }
+    return t;
+  }
+
+  private void link(int u, int v, Random random) {
+    int a = Math.min(u, v);
+    int b = Math.max(u, v);
+    if (a == b || !linked.add((long) a * size + b)) return;
+    links.add(new int[]{a, b, 1 + random.nextInt(MAX_WEIGHT)});
+    degree[a]++;
+    degree[b]++;
+  }
+
+  int maxDegree() {
+    int max = 0;
+    for (int d : degree) max = Math.max(max, d);
+    return max;
+  }
+
+  /**
+   * @return for every router the smallest router of its connected component
+   */
+  int[] components() {
+    int[] parent = new int[size];
+    for (int i = 0; i < size; i++) parent[i] = i;
+    for (int[] l : links) {
+      int a = find(parent, l[0]);
+      int b = find(parent, l[1]);
+      if (a != b) parent[Math.max(a, b)] = Math.min(a, b);
+    }
+    int[] component = new int[size];
+    for (int i = 0; i < size; i++) component[i] = find(parent, i);
+    return component;
+  }
+
+  int componentCount() {
+    int[] component = components();
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (component[i] == i) count++;
+    }
+    return count;
+  }
+
+  private static int find(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  /**
+   * simulated IP of router i, 10.0.0.1 for router 0; the benchmarks number their routers the
+   * same way
+   */
+  public static String address(int i) {
+    int a = i + 1;
+    return "10." + ((a >>> 16) & 0xff) + "." + ((a >>> 8) & 0xff) + "." + (a & 0xff);
+  }
+
+  @Override
+  public String toString() {
+    return name + ", " + links.size() + " links, max degree " + maxDegree() + ", "
+            + componentCount() + " component(s)";
+  }
+}
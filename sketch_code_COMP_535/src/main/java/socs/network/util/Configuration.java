@@ -15,6 +15,15 @@ public class Configuration {
     _config = ConfigFactory.parseFile(new File(path));
   }
 
+  // nothing set, entries are added with addEntry
+  public Configuration() {
+    _config = ConfigFactory.empty();
+  }
+
+  public boolean hasPath(String key) {
+    return _config.hasPath(key);
+  }
+
   public String getString(String key) {
     return _config.getString(key);
   }
@@ -0,0 +1,124 @@
+package socs.network.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * binary min-heap over the dense integer indices [0, capacity) with int keys
+ * <p/>
+ * every index can be in the heap at most once; its position is tracked so that
+ * decreaseKey and contains are O(log n) and O(1) respectively
+ */
+public class IndexedMinHeap {
+
+  private final int[] heap;     // heap position => index
+  private final int[] position; // index => heap position, -1 if not in the heap
+  private final int[] keys;     // index => key
+  private int size = 0;
+
+  public IndexedMinHeap(int capacity) {
+    heap = new int[capacity];
+    position = new int[capacity];
+    keys = new int[capacity];
+    Arrays.fill(position, -1);
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(int index) {
+    return position[index] != -1;
+  }
+
+  public int keyOf(int index) {
+    return keys[index];
+  }
+
+  public void insert(int index, int key) {
+    if (contains(index)) {
+      throw new IllegalArgumentException("index " + index + " is already in the heap");
+    }
+    keys[index] = key;
+    heap[size] = index;
+    position[index] = size;
+    siftUp(size++);
+  }
+
+  public void decreaseKey(int index, int key) {
+    if (key > keys[index]) {
+      throw new IllegalArgumentException("new key " + key + " is larger than " + keys[index]);
+    }
+    keys[index] = key;
+    siftUp(position[index]);
+  }
+
+  /**
+   * insert the index, or lower its key if it is already queued with a larger one
+   *
+   * @return true if the heap changed
+   */
+  public boolean insertOrDecrease(int index, int key) {
+    if (!contains(index)) {
+      insert(index, key);
+      return true;
+    }
+    if (key < keys[index]) {
+      decreaseKey(index, key);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * remove and return the index with the smallest key
+   */
+  public int poll() {
+    if (size == 0) throw new NoSuchElementException();
+    int min = heap[0];
+    swap(0, --size);
+    position[min] = -1;
+    if (size > 0) siftDown(0);
+    return min;
+  }
+
+  public void clear() {
+    for (int i = 0; i < size; i++) position[heap[i]] = -1;
+    size = 0;
+  }
+
+  private void siftUp(int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (keys[heap[parent]] <= keys[heap[pos]]) break;
+      swap(pos, parent);
+      pos = parent;
+    }
+  }
+
+  private void siftDown(int pos) {
+    while (true) {
+      int left = 2 * pos + 1;
+      if (left >= size) break;
+      int smallest = left;
+      int right = left + 1;
+      if (right < size && keys[heap[right]] < keys[heap[left]]) smallest = right;
+      if (keys[heap[pos]] <= keys[heap[smallest]]) break;
+      swap(pos, smallest);
+      pos = smallest;
+    }
+  }
+
+  private void swap(int a, int b) {
+    int ia = heap[a];
+    int ib = heap[b];
+    heap[a] = ib;
+    heap[b] = ia;
+    position[ib] = a;
+    position[ia] = b;
+  }
+}
@@ -0,0 +1,226 @@
+package socs.network.message;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryPacketCodecTest {
+
+  private static final PacketCodec BINARY = PacketFrames.codec("binary");
+
+  @Test
+  public void lsaUpdateRoundTrip() throws IOException {
+    SOSPFPacket packet = packet((short) 1);
+    packet.originalTrigger = true;
+    // 200.0.0.1 is a negative int, it has to stay in the set next to the positive ones
+    packet.visited = VisitedSet.of(Arrays.asList("10.0.0.1", "200.0.0.1", "10.0.0.3"));
+    packet.lsaArray = new Vector<LSA>();
+    packet.lsaArray.add(lsa("10.0.0.1", Integer.MIN_VALUE, 0, "10.0.0.2", "10.0.0.3"));
+    packet.lsaArray.add(lsa("10.0.0.2", 7, 1800, "10.0.0.1"));
+    packet.lsaArray.add(lsa("10.0.0.3", Integer.MAX_VALUE, 3600));
+    packet.deltaArray = new Vector<LSADelta>();
+    packet.deltaArray.add(new LSADelta("10.0.0.4", 5, 6,
+            Arrays.asList(new LinkDescription("10.0.0.5", 2, 9)), Arrays.asList("10.0.0.6")));
+
+    SOSPFPacket decoded = roundTrip(packet);
+
+    assertHeader(packet, decoded);
+    assertTrue(decoded.originalTrigger);
+    assertEquals(packet.visited.toString(), decoded.visited.toString());
+    assertEquals(packet.lsaArray.size(), decoded.lsaArray.size());
+    for (int i = 0; i < packet.lsaArray.size(); i++) {
+      assertLsa(packet.lsaArray.get(i), decoded.lsaArray.get(i));
+    }
+    LSADelta delta = decoded.deltaArray.get(0);
+    assertEquals("10.0.0.4", delta.linkStateID);
+    assertEquals(5, delta.baseSeqNumber);
+    assertEquals(6, delta.lsaSeqNumber);
+    assertLink(packet.deltaArray.get(0).added.get(0), delta.added.get(0));
+    assertEquals(Arrays.asList("10.0.0.6"), delta.removed);
+    assertNull(decoded.lsaRequest);
+    assertNull(decoded.dbSummary);
+  }
+
+  @Test
+  public void requestAndSummaryRoundTrip() throws IOException {
+    SOSPFPacket packet = packet((short) 3);
+    packet.lsaRequest = new Vector<String>(Arrays.asList("10.0.0.7", "255.255.255.255"));
+    packet.dbSummary = new Vector<LSAHeader>();
+    packet.dbSummary.add(new LSAHeader("10.0.0.8", -3));
+    packet.dbSummary.add(new LSAHeader("0.0.0.0", Integer.MIN_VALUE));
+
+    SOSPFPacket decoded = roundTrip(packet);
+
+    assertHeader(packet, decoded);
+    assertEquals(packet.lsaRequest, decoded.lsaRequest);
+    assertEquals(2, decoded.dbSummary.size());
+    for (int i = 0; i < 2; i++) {
+      assertEquals(packet.dbSummary.get(i).linkStateID, decoded.dbSummary.get(i).linkStateID);
+      assertEquals(packet.dbSummary.get(i).lsaSeqNumber, decoded.dbSummary.get(i).lsaSeqNumber);
+    }
+  }
+
+  @Test
+  public void absentFieldsStayAbsent() throws IOException {
+    SOSPFPacket packet = new SOSPFPacket();
+    packet.srcProcessPort = (short) 65000;
+
+    SOSPFPacket decoded = roundTrip(packet);
+
+    assertEquals(packet.srcProcessPort, decoded.srcProcessPort);
+    assertFalse(decoded.originalTrigger);
+    assertNull(decoded.srcProcessIP);
+    assertNull(decoded.srcIP);
+    assertNull(decoded.routerID);
+    assertNull(decoded.visited);
+    assertNull(decoded.lsaArray);
+    assertNull(decoded.deltaArray);
+  }
+
+  @Test
+  public void filteredLsasAreLeftOut() throws IOException {
+    SOSPFPacket packet = packet((short) 1);
+    packet.lsaArray = new Vector<LSA>();
+    packet.lsaArray.add(lsa("10.0.0.1", 3, 0, "10.0.0.2"));
+    packet.lsaArray.add(lsa("10.0.0.2", 4, 0, "10.0.0.1"));
+    byte[] frame = PacketFrames.encode(BINARY, packet);
+
+    SOSPFPacket decoded = PacketFrames.decode(frame, 4, frame.length - 4, new LsaFilter() {
+      public boolean isKnown(String linkStateID, int lsaSeqNumber, int lsaAge) {
+        return linkStateID.equals("10.0.0.1");
+      }
+    });
+
+    assertEquals(1, decoded.lsaArray.size());
+    assertLsa(packet.lsaArray.get(1), decoded.lsaArray.get(0));
+  }
+
+  @Test
+  public void javaFramesDecodeToo() throws IOException {
+    SOSPFPacket packet = packet((short) 0);
+    byte[] frame = PacketFrames.encode(PacketFrames.codec("java"), packet);
+    assertHeader(packet, PacketFrames.decode(frame, 4, frame.length - 4));
+  }
+
+  @Test
+  public void everyTruncationIsRejected() throws IOException {
+    SOSPFPacket packet = packet((short) 1);
+    packet.visited = VisitedSet.EMPTY.plus("10.0.0.1");
+    packet.lsaArray = new Vector<LSA>();
+    packet.lsaArray.add(lsa("10.0.0.1", 1, 0, "10.0.0.2"));
+    byte[] payload = BINARY.encode(packet);
+    for (int length = 0; length < payload.length; length++) {
+      assertMalformed(payload, length);
+    }
+  }
+
+  @Test
+  public void trailingBytesAreRejected() throws IOException {
+    byte[] payload = BINARY.encode(packet((short) 0));
+    assertMalformed(Arrays.copyOf(payload, payload.length + 1), payload.length + 1);
+  }
+
+  @Test
+  public void unknownVersionIsRejected() throws IOException {
+    byte[] payload = BINARY.encode(packet((short) 0));
+    payload[0] = BinaryPacketCodec.VERSION + 1;
+    assertMalformed(payload, payload.length);
+  }
+
+  @Test(expected = MalformedPacketException.class)
+  public void unknownFormatIsRejected() throws IOException {
+    byte[] frame = PacketFrames.encode(BINARY, packet((short) 0));
+    frame[4] = 42;
+    PacketFrames.decode(frame, 4, frame.length - 4);
+  }
+
+  @Test
+  public void hugeCountIsRejected() throws IOException {
+    // no addresses, port 0, then far more LSAs than there are bytes
+    byte[] payload = {BinaryPacketCodec.VERSION, 1, 0, 1 << 1, 0, 0, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f};
+    assertMalformed(payload, payload.length);
+  }
+
+  @Test
+  public void overlongVarintIsRejected() throws IOException {
+    byte[] payload = {BinaryPacketCodec.VERSION, 3, 0, 1 << 1, 0, 0,
+            (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+    assertMalformed(payload, payload.length);
+  }
+
+  @Test
+  public void unsortedVisitedIsRejected() throws IOException {
+    // two visited routers, the second one 0 after the first
+    byte[] payload = {BinaryPacketCodec.VERSION, 1, 0, (byte) (1 << 7), 0, 0, 2, 10, 0, 0, 1, 0};
+    assertMalformed(payload, payload.length);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nonIPv4AddressCannotBeEncoded() throws IOException {
+    SOSPFPacket packet = packet((short) 0);
+    packet.srcIP = "router-1";
+    BINARY.encode(packet);
+  }
+
+  private static SOSPFPacket packet(short type) {
+    return new SOSPFPacket(type, "10.0.0.1", "10.0.0.2", "10.0.0.1", "10.0.0.2", "127.1.1.0", (short) 5001);
+  }
+
+  private static LSA lsa(String id, int seq, int age, String... neighbors) {
+    List<LinkDescription> links = new ArrayList<LinkDescription>();
+    links.add(new LinkDescription(id, -1, 0));
+    for (int i = 0; i < neighbors.length; i++) {
+      links.add(new LinkDescription(neighbors[i], 5000 + i, Integer.MAX_VALUE - i));
+    }
+    return new LSA(id, seq, age, links);
+  }
+
+  private static SOSPFPacket roundTrip(SOSPFPacket packet) throws IOException {
+    byte[] frame = PacketFrames.encode(BINARY, packet);
+    assertEquals(BinaryPacketCodec.FORMAT, frame[4]);
+    return PacketFrames.decode(frame, 4, frame.length - 4);
+  }
+
+  private static void assertMalformed(byte[] payload, int length) throws IOException {
+    try {
+      BINARY.decode(payload, 0, length);
+      fail("decoded " + length + " bytes of a malformed packet");
+    } catch (MalformedPacketException e) {
+      // expected
+    }
+  }
+
+  private static void assertHeader(SOSPFPacket expected, SOSPFPacket actual) {
+    assertEquals(expected.sospfType, actual.sospfType);
+    assertEquals(expected.srcProcessIP, actual.srcProcessIP);
+    assertEquals(expected.srcProcessPort, actual.srcProcessPort);
+    assertEquals(expected.srcIP, actual.srcIP);
+    assertEquals(expected.dstIP, actual.dstIP);
+    assertEquals(expected.routerID, actual.routerID);
+    assertEquals(expected.neighborID, actual.neighborID);
+  }
+
+  private static void assertLsa(LSA expected, LSA actual) {
+    assertEquals(expected.linkStateID, actual.linkStateID);
+    assertEquals(expected.lsaSeqNumber, actual.lsaSeqNumber);
+    assertEquals(expected.lsaAge, actual.lsaAge);
+    assertEquals(expected.links.size(), actual.links.size());
+    for (int i = 0; i < expected.links.size(); i++) assertLink(expected.links.get(i), actual.links.get(i));
+  }
+
+  private static void assertLink(LinkDescription expected, LinkDescription actual) {
+    assertEquals(expected.linkID, actual.linkID);
+    assertEquals(expected.portNum, actual.portNum);
+    assertEquals(expected.tosMetrics, actual.tosMetrics);
+  }
+}
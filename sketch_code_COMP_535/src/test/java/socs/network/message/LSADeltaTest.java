@@ -0,0 +1,105 @@
+package socs.network.message;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class LSADeltaTest {
+
+  @Test
+  public void appliedToItsBaseGivesTheNextLsa() {
+    LSA base = lsa(4, link("10.0.0.2", 1, 3), link("10.0.0.3", 2, 5), link("10.0.0.4", 3, 1));
+    // one link gone, one with a new weight, one new
+    LSA next = lsa(5, link("10.0.0.3", 2, 7), link("10.0.0.4", 3, 1), link("10.0.0.5", 1, 2));
+
+    LSADelta delta = LSADelta.between(base, next);
+
+    assertEquals(4, delta.baseSeqNumber);
+    assertEquals(5, delta.lsaSeqNumber);
+    assertEquals(Collections.singletonList("10.0.0.2"), delta.removed);
+    assertEquals(2, delta.added.size());
+    assertSameLsa(next, delta.applyTo(base));
+  }
+
+  @Test
+  public void randomChangesRoundTrip() {
+    Random random = new Random(7);
+    for (int trial = 0; trial < 500; trial++) {
+      LSA base = randomLsa(random, random.nextInt(100));
+      LSA next = randomLsa(random, base.lsaSeqNumber + 1 + random.nextInt(3));
+      assertSameLsa(next, LSADelta.between(base, next).applyTo(base));
+    }
+  }
+
+  @Test
+  public void unchangedLsaHasAnEmptyDelta() {
+    LSA base = lsa(1, link("10.0.0.2", 1, 3));
+    LSADelta delta = LSADelta.between(base, base.withSeqNumber(2));
+
+    assertEquals(0, delta.size());
+    assertSameLsa(base.withSeqNumber(2), delta.applyTo(base));
+  }
+
+  @Test
+  public void anotherBaseSequenceIsRejected() {
+    LSA base = lsa(4, link("10.0.0.2", 1, 3));
+    LSADelta delta = LSADelta.between(base, lsa(5, link("10.0.0.2", 1, 4)));
+
+    assertNotNull(delta.applyTo(base));
+    assertNull(delta.applyTo(base.withSeqNumber(3)));
+    assertNull(delta.applyTo(base.withSeqNumber(5)));
+    assertNull(delta.applyTo(null));
+  }
+
+  @Test
+  public void anotherRoutersLsaIsRejected() {
+    LSA base = lsa(4, link("10.0.0.2", 1, 3));
+    LSADelta delta = LSADelta.between(base, lsa(5));
+
+    assertNull(delta.applyTo(new LSA("10.0.0.9", 4, base.links)));
+  }
+
+  // the order of the links is not part of an LSA's meaning, applyTo puts new links last
+  private static void assertSameLsa(LSA expected, LSA actual) {
+    assertEquals(expected.linkStateID, actual.linkStateID);
+    assertEquals(expected.lsaSeqNumber, actual.lsaSeqNumber);
+    assertEquals(byLinkID(expected), byLinkID(actual));
+  }
+
+  private static Map<String, String> byLinkID(LSA lsa) {
+    Map<String, String> links = new HashMap<String, String>();
+    for (LinkDescription ld : lsa.links) links.put(ld.linkID, ld.portNum + "/" + ld.tosMetrics);
+    assertEquals("duplicate links in " + lsa, lsa.links.size(), links.size());
+    return links;
+  }
+
+  private static LSA randomLsa(Random random, int seq) {
+    List<LinkDescription> links = new ArrayList<LinkDescription>();
+    for (int i = 2; i < 10; i++) {
+      if (random.nextBoolean()) links.add(link("10.0.0." + i, 1 + random.nextInt(2), random.nextInt(3)));
+    }
+    Collections.shuffle(links, random);
+    return lsa(seq, links.toArray(new LinkDescription[0]));
+  }
+
+  private static LSA lsa(int seq, LinkDescription... links) {
+    List<LinkDescription> all = new ArrayList<LinkDescription>();
+    all.add(new LinkDescription("10.0.0.1", -1, 0));
+    all.addAll(Arrays.asList(links));
+    return new LSA("10.0.0.1", seq, all);
+  }
+
+  private static LinkDescription link(String to, int port, int weight) {
+    return new LinkDescription(to, port, weight);
+  }
+}
@@ -0,0 +1,84 @@
+package socs.network.message;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VisitedSetTest {
+
+  @Test
+  public void emptyContainsNothing() {
+    assertEquals(0, VisitedSet.EMPTY.size());
+    assertFalse(VisitedSet.EMPTY.contains("10.0.0.1"));
+  }
+
+  @Test
+  public void plusAddsWithoutChangingTheOriginal() {
+    VisitedSet one = VisitedSet.EMPTY.plus("10.0.0.2");
+    VisitedSet two = one.plus(Arrays.asList("10.0.0.1", "10.0.0.2"));
+
+    assertEquals(1, one.size());
+    assertFalse(one.contains("10.0.0.1"));
+    assertEquals(2, two.size());
+    assertTrue(two.contains("10.0.0.1"));
+    assertTrue(two.contains("10.0.0.2"));
+    assertFalse(two.contains("10.0.0.3"));
+  }
+
+  @Test
+  public void ofDropsDuplicatesAndSorts() {
+    VisitedSet set = VisitedSet.of(Arrays.asList("10.0.0.3", "10.0.0.1", "10.0.0.3"));
+    assertArrayEquals(new String[]{"10.0.0.1", "10.0.0.3"}, set.toArray());
+  }
+
+  @Test
+  public void idsNeedNotBeIPv4() {
+    VisitedSet set = VisitedSet.of(Arrays.asList("R1", "router-b"));
+    assertTrue(set.contains("R1"));
+    assertTrue(set.contains("router-b"));
+    assertFalse(set.contains("R2"));
+  }
+
+  @Test
+  public void retainAllKeepsTheCommonRouters() {
+    VisitedSet a = VisitedSet.of(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.4"));
+    VisitedSet b = VisitedSet.of(Arrays.asList("10.0.0.2", "10.0.0.3", "10.0.0.4"));
+    assertArrayEquals(new String[]{"10.0.0.2", "10.0.0.4"}, a.retainAll(b).toArray());
+    assertEquals(0, a.retainAll(VisitedSet.EMPTY).size());
+  }
+
+  @Test
+  public void plusPastTheBoundKeepsTheAddedRouters() {
+    VisitedSet full = VisitedSet.of(routers("10.0.1.", VisitedSet.MAX_SIZE));
+    List<String> added = routers("10.0.2.", 3);
+
+    VisitedSet set = full.plus(added);
+
+    assertEquals(VisitedSet.MAX_SIZE, set.size());
+    for (String r : added) assertTrue(set.contains(r));
+  }
+
+  @Test
+  public void plusOfMoreThanTheBoundStaysBounded() {
+    VisitedSet set = VisitedSet.EMPTY.plus(routers("10.0.3.", VisitedSet.MAX_SIZE + 10));
+    assertEquals(VisitedSet.MAX_SIZE, set.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void ofRejectsMoreThanTheBound() {
+    VisitedSet.of(routers("10.0.4.", VisitedSet.MAX_SIZE + 1));
+  }
+
+  private static List<String> routers(String prefix, int n) {
+    List<String> routers = new ArrayList<String>();
+    for (int i = 1; i <= n; i++) routers.add(prefix + i);
+    return routers;
+  }
+}
@@ -0,0 +1,122 @@
+package socs.network.node;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LSADelta;
+import socs.network.message.LinkDescription;
+import socs.network.message.LsaFilter;
+import socs.network.message.SOSPFPacket;
+import socs.network.message.VisitedSet;
+import socs.network.util.Configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * a delta the router has no matching base for is not applied, the router asks the neighbor that
+ * sent it for the full LSA instead
+ */
+public class DeltaFallbackTest {
+
+  private static final String NEIGHBOR = "10.0.0.2";
+
+  private final BlockingQueue<SOSPFPacket> sent = new LinkedBlockingQueue<SOSPFPacket>();
+  private PacketHandler handler;
+  private Router router;
+
+  @Before
+  public void setUp() {
+    Configuration config = new Configuration();
+    config.addEntry("socs.network.router.ip", "10.0.0.1");
+    config.addEntry("socs.network.router.port", "1");
+    config.addEntry("socs.network.router.metricsMBean", "false");
+    router = new Router(config, new Transport() {
+      public void start(String processIP, short processPort, PacketHandler packets, LsaFilter known,
+                        PacketHandler datagrams) {
+        handler = packets;
+      }
+
+      public Connection connect(String processIP, short processPort) {
+        return new Connection() {
+          public void send(SOSPFPacket packet) {
+            sent.add(packet);
+          }
+
+          public void close() {
+          }
+        };
+      }
+
+      public void sendDatagram(String processIP, short processPort, SOSPFPacket packet) {
+      }
+
+      public void close() {
+      }
+    });
+    router.attach("127.1.1.0", (short) 2, NEIGHBOR, (short) 1);
+  }
+
+  @After
+  public void tearDown() {
+    router.shutdown();
+  }
+
+  @Test
+  public void mismatchedBaseAsksForTheFullLsa() throws InterruptedException {
+    LSA base = lsa("10.0.0.3", 1, "10.0.0.4");
+    handler.handle(update(Collections.singletonList(base), Collections.<LSADelta>emptyList()));
+
+    // one delta on our copy, one on a copy we never had and one on an instance we skipped
+    LSA next = lsa("10.0.0.3", 2, "10.0.0.4", "10.0.0.5");
+    LSADelta onOurCopy = LSADelta.between(base, next);
+    LSADelta noCopy = LSADelta.between(lsa("10.0.0.4", 1), lsa("10.0.0.4", 2, "10.0.0.3"));
+    handler.handle(update(Collections.<LSA>emptyList(), Arrays.asList(onOurCopy, noCopy)));
+    LSADelta skipped = LSADelta.between(lsa("10.0.0.3", 3), lsa("10.0.0.3", 4));
+    handler.handle(update(Collections.<LSA>emptyList(), Collections.singletonList(skipped)));
+
+    assertEquals(2, router.lsd.get("10.0.0.3").lsaSeqNumber);
+    assertNotNull(router.lsd.get("10.0.0.3").linkTo("10.0.0.5"));
+    assertNull(router.lsd.get("10.0.0.4"));
+
+    assertEquals(Collections.singletonList("10.0.0.4"), nextRequest().lsaRequest);
+    assertEquals(Collections.singletonList("10.0.0.3"), nextRequest().lsaRequest);
+  }
+
+  private SOSPFPacket nextRequest() throws InterruptedException {
+    while (true) {
+      SOSPFPacket packet = sent.poll(10, TimeUnit.SECONDS);
+      assertNotNull("no LSA request sent", packet);
+      if (packet.sospfType == 2) {
+        assertEquals(NEIGHBOR, packet.dstIP);
+        return packet;
+      }
+    }
+  }
+
+  private static SOSPFPacket update(List<LSA> lsas, List<LSADelta> deltas) {
+    SOSPFPacket packet = new SOSPFPacket((short) 1, NEIGHBOR, "10.0.0.1", NEIGHBOR, "10.0.0.1", "127.1.1.0",
+            (short) 2);
+    packet.visited = VisitedSet.EMPTY.plus(NEIGHBOR);
+    packet.lsaArray = new Vector<LSA>(lsas);
+    if (!deltas.isEmpty()) packet.deltaArray = new Vector<LSADelta>(deltas);
+    return packet;
+  }
+
+  private static LSA lsa(String id, int seq, String... neighbors) {
+    Vector<LinkDescription> links = new Vector<LinkDescription>();
+    links.add(new LinkDescription(id, -1, 0));
+    for (String n : neighbors) links.add(new LinkDescription(n, 1, 1));
+    return new LSA(id, seq, links);
+  }
+}
@@ -0,0 +1,144 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * path counts and paths against answers worked out by hand on a diamond and on grids
+ */
+public class EqualCostPathsTest {
+
+  @Test
+  public void diamondHasTwoEqualPaths() {
+    // a -1- b -2- d and a -2- c -1- d both cost 3, the direct link costs 4
+    LinkStateDatabase lsd = network("a",
+            "a", "b", "1", "a", "c", "2", "b", "d", "2", "c", "d", "1", "a", "d", "4");
+    EqualCostPaths paths = lsd.equalCostPaths();
+
+    assertEquals(2, paths.pathCount("d"));
+    assertEquals(hops("b", 1L, "c", 1L), hops(paths.nextHops("d")));
+    assertEquals(new HashSet<String>(Arrays.asList("a ->(1) b ->(2) d", "a ->(2) c ->(1) d")),
+            new HashSet<String>(paths.pathsTo("d", 10)));
+  }
+
+  @Test
+  public void unequalDiamondHasOnePath() {
+    LinkStateDatabase lsd = network("a", "a", "b", "1", "a", "c", "2", "b", "d", "2", "c", "d", "2");
+    EqualCostPaths paths = lsd.equalCostPaths();
+
+    assertEquals(1, paths.pathCount("d"));
+    assertEquals(Arrays.asList("a ->(1) b ->(2) d"), paths.pathsTo("d", 10));
+  }
+
+  @Test
+  public void gridCountsMonotonePaths() {
+    LinkStateDatabase lsd = grid(3);
+    EqualCostPaths paths = lsd.equalCostPaths();
+
+    // 2 steps down and 2 right in any order: 4 choose 2, half of them start with each neighbor
+    assertEquals(6, paths.pathCount(ip(2, 2)));
+    assertEquals(hops(ip(0, 1), 3L, ip(1, 0), 3L), hops(paths.nextHops(ip(2, 2))));
+    List<String> all = paths.pathsTo(ip(2, 2), 100);
+    assertEquals(6, all.size());
+    assertEquals(6, new HashSet<String>(all).size());
+    assertTrue(all.contains(path(ip(0, 0), ip(0, 1), ip(0, 2), ip(1, 2), ip(2, 2))));
+    assertTrue(all.contains(path(ip(0, 0), ip(1, 0), ip(1, 1), ip(2, 1), ip(2, 2))));
+    assertEquals(1, paths.pathCount(ip(2, 0)));
+    assertEquals(2, paths.pathsTo(ip(2, 2), 2).size());
+  }
+
+  @Test
+  public void largeGridCountsAndSaturates() {
+    EqualCostPaths paths = grid(40).equalCostPaths();
+
+    assertEquals(binomial(38, 19), paths.pathCount(ip(19, 19)));
+    assertEquals(binomial(25, 10), paths.pathCount(ip(10, 15)));
+    // 78 choose 39 does not fit a long
+    assertEquals(Long.MAX_VALUE, paths.pathCount(ip(39, 39)));
+  }
+
+  @Test
+  public void rootAndUnknownHaveNoPaths() {
+    EqualCostPaths paths = grid(2).equalCostPaths();
+
+    assertEquals(0, paths.pathCount(ip(0, 0)));
+    assertEquals(0, paths.pathCount("10.9.9.9"));
+    assertEquals(0, paths.pathsTo("10.9.9.9", 10).size());
+  }
+
+  private static LinkStateDatabase grid(int n) {
+    List<String> links = new ArrayList<String>();
+    for (int r = 0; r < n; r++) {
+      for (int c = 0; c < n; c++) {
+        if (r + 1 < n) links.addAll(Arrays.asList(ip(r, c), ip(r + 1, c), "1"));
+        if (c + 1 < n) links.addAll(Arrays.asList(ip(r, c), ip(r, c + 1), "1"));
+      }
+    }
+    return network(ip(0, 0), links.toArray(new String[0]));
+  }
+
+  // a database with an LSA per router, links given as (router, router, weight) in both directions
+  private static LinkStateDatabase network(String root, String... links) {
+    Map<String, List<LinkDescription>> lsas = new HashMap<String, List<LinkDescription>>();
+    for (int i = 0; i < links.length; i += 3) {
+      int weight = Integer.parseInt(links[i + 2]);
+      linksOf(lsas, links[i]).add(new LinkDescription(links[i + 1], 1, weight));
+      linksOf(lsas, links[i + 1]).add(new LinkDescription(links[i], 1, weight));
+    }
+    LinkStateDatabase lsd = new LinkStateDatabase(new RouterDescription("127.1.1.0", (short) 1, root));
+    for (Map.Entry<String, List<LinkDescription>> e : lsas.entrySet()) {
+      lsd.install(new LSA(e.getKey(), 1, e.getValue()));
+    }
+    return lsd;
+  }
+
+  private static List<LinkDescription> linksOf(Map<String, List<LinkDescription>> lsas, String router) {
+    List<LinkDescription> links = lsas.get(router);
+    if (links == null) {
+      links = new ArrayList<LinkDescription>();
+      links.add(new LinkDescription(router, -1, 0));
+      lsas.put(router, links);
+    }
+    return links;
+  }
+
+  private static Map<String, Long> hops(List<EqualCostPaths.NextHop> hops) {
+    Map<String, Long> result = new HashMap<String, Long>();
+    for (EqualCostPaths.NextHop hop : hops) result.put(hop.neighborIP, hop.paths);
+    return result;
+  }
+
+  private static Map<String, Long> hops(String a, long aPaths, String b, long bPaths) {
+    Map<String, Long> result = new HashMap<String, Long>();
+    result.put(a, aPaths);
+    result.put(b, bPaths);
+    return result;
+  }
+
+  private static String path(String... routers) {
+    StringBuilder sb = new StringBuilder(routers[0]);
+    for (int i = 1; i < routers.length; i++) sb.append(" ->(1) ").append(routers[i]);
+    return sb.toString();
+  }
+
+  private static long binomial(int n, int k) {
+    long result = 1;
+    for (int i = 1; i <= k; i++) result = result * (n - k + i) / i;
+    return result;
+  }
+
+  private static String ip(int row, int column) {
+    return "10.0." + row + "." + column;
+  }
+}
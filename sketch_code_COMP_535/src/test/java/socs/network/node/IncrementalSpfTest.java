@@ -0,0 +1,114 @@
+package socs.network.node;
+
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * after every single-LSA change, the tree patched by incremental SPF has to give every router
+ * the same distance as a full run over the same database
+ */
+public class IncrementalSpfTest {
+
+  private static final Pattern WEIGHT = Pattern.compile("->\\((\\d+)\\)");
+
+  @Test
+  public void matchesFullRunAfterRandomChanges() {
+    Random random = new Random(42);
+    for (int trial = 0; trial < 200; trial++) {
+      int size = 2 + random.nextInt(30);
+      RouterDescription rd = new RouterDescription("127.1.1.0", (short) 1, id(0));
+      LinkStateDatabase incremental = new LinkStateDatabase(rd);
+      LinkStateDatabase full = new LinkStateDatabase(rd);
+      full.setIncrementalSpf(false);
+      for (int i = 0; i < size; i++) {
+        LSA lsa = randomLsa(random, size, i, 1);
+        incremental.install(lsa);
+        full.install(lsa);
+      }
+
+      for (int step = 0; step < 40; step++) {
+        // the cached tree is the one for the database before the change
+        assertSameDistances(incremental, full, size + 1, "trial " + trial + " step " + step);
+        change(random, size + 1, incremental, full);
+      }
+      assertSameDistances(incremental, full, size + 1, "trial " + trial + " at the end");
+    }
+  }
+
+  // one random change to one origin's LSA, applied to both databases; router `size` starts
+  // out unknown, so changes may add a router or link to one
+  private static void change(Random random, int size, LinkStateDatabase a, LinkStateDatabase b) {
+    int origin = random.nextInt(size);
+    String target = id(random.nextInt(size));
+    switch (random.nextInt(5)) {
+      case 0:
+        LSA current = a.get(id(origin));
+        LSA lsa = randomLsa(random, size, origin, current == null ? 1 : current.lsaSeqNumber + 1);
+        a.install(lsa);
+        b.install(lsa);
+        break;
+      case 1:
+        a.removeLink(id(origin), target);
+        b.removeLink(id(origin), target);
+        break;
+      case 2:
+        int weight = random.nextInt(6);
+        a.setLinkWeight(id(origin), target, weight);
+        b.setLinkWeight(id(origin), target, weight);
+        break;
+      case 3:
+        LinkDescription ld = new LinkDescription(target, 1, random.nextInt(6));
+        a.addLink(id(origin), ld);
+        b.addLink(id(origin), ld);
+        break;
+      default:
+        // the router's own LSA is never removed
+        if (origin == 0) return;
+        a.remove(id(origin));
+        b.remove(id(origin));
+    }
+  }
+
+  private static void assertSameDistances(LinkStateDatabase incremental, LinkStateDatabase full, int size,
+                                          String when) {
+    for (int d = 0; d < size; d++) {
+      assertEquals(when + ", distance to " + id(d), distance(full.getShortestPath(id(d))),
+              distance(incremental.getShortestPath(id(d))));
+    }
+  }
+
+  // -1 if there is no path
+  private static int distance(String path) {
+    if (path == null) return -1;
+    int distance = 0;
+    Matcher m = WEIGHT.matcher(path);
+    while (m.find()) distance += Integer.parseInt(m.group(1));
+    return distance;
+  }
+
+  private static LSA randomLsa(Random random, int size, int origin, int seq) {
+    List<LinkDescription> links = new ArrayList<LinkDescription>();
+    links.add(new LinkDescription(id(origin), -1, 0));
+    int degree = random.nextInt(4);
+    for (int i = 0; i < degree; i++) {
+      int target = random.nextInt(size);
+      if (target == origin) continue;
+      // weight 0 links too, ties through them are the tricky part of patching a tree
+      links.add(new LinkDescription(id(target), 1, random.nextInt(6)));
+    }
+    return new LSA(id(origin), seq, links);
+  }
+
+  private static String id(int i) {
+    return "10.0.0." + (i + 1);
+  }
+}
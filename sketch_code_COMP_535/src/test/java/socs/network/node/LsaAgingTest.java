@@ -0,0 +1,141 @@
+package socs.network.node;
+
+import org.junit.Before;
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * a wheel of 1 s ticks and a clock, both moved by the test one second at a time
+ */
+public class LsaAgingTest {
+
+  private static final String SELF = "10.0.0.1";
+  private static final int REFRESH = 30;
+  private static final int MAX_AGE = 60;
+
+  private final ManualClock clock = new ManualClock(1000000);
+  private final TimerWheel wheel = new TimerWheel(1000, 16);
+  private final List<LSA> maxAged = new ArrayList<LSA>();
+  private LinkStateDatabase lsd;
+  private LsaAging aging;
+  private int refreshes = 0;
+
+  @Before
+  public void setUp() {
+    lsd = new LinkStateDatabase(new RouterDescription("127.1.1.0", (short) 1, SELF));
+    aging = new LsaAging(SELF, REFRESH, MAX_AGE, wheel, new LsaAging.Listener() {
+      public void refreshDue() {
+        refreshes++;
+      }
+
+      // flushed like Router.processMaxAged does
+      public void maxAged(LSA lsa) {
+        maxAged.add(lsa);
+        if (lsd.get(lsa.linkStateID) == lsa) lsd.remove(lsa.linkStateID);
+      }
+    }, clock);
+    lsd.setAging(aging);
+  }
+
+  @Test
+  public void ownLsaIsRefreshedAfterTheInterval() {
+    seconds(REFRESH - 1);
+    assertEquals(0, refreshes);
+    seconds(1);
+    assertEquals(1, refreshes);
+  }
+
+  @Test
+  public void changingOwnLsaRestartsTheRefreshInterval() {
+    seconds(20);
+    lsd.incrementSequence(SELF);
+    seconds(REFRESH - 1);
+    assertEquals(0, refreshes);
+    seconds(1);
+    assertEquals(1, refreshes);
+  }
+
+  @Test
+  public void otherLsaIsFlushedAtMaxAge() {
+    LSA lsa = lsa("10.0.0.2", 1, 20);
+    lsd.install(lsa);
+
+    seconds(MAX_AGE - 20 - 1);
+    assertEquals(0, maxAged.size());
+    assertEquals(MAX_AGE - 1, aging.ageOf(lsa));
+    seconds(1);
+
+    assertEquals(1, maxAged.size());
+    assertSame(lsa, maxAged.get(0));
+    assertNull(lsd.get("10.0.0.2"));
+    // only our own LSA is left to age
+    assertEquals(1, aging.size());
+  }
+
+  @Test
+  public void newerInstanceReplacesTheTimeout() {
+    lsd.install(lsa("10.0.0.2", 1, 0));
+    seconds(MAX_AGE - 10);
+    LSA newer = lsa("10.0.0.2", 2, 0);
+    lsd.install(newer);
+
+    seconds(MAX_AGE - 1);
+    assertEquals(0, maxAged.size());
+    seconds(1);
+    assertEquals(1, maxAged.size());
+    assertSame(newer, maxAged.get(0));
+  }
+
+  @Test
+  public void removedLsaNeverReachesMaxAge() {
+    lsd.install(lsa("10.0.0.2", 1, 0));
+    lsd.remove("10.0.0.2");
+
+    seconds(MAX_AGE + 1);
+    assertEquals(0, maxAged.size());
+    assertEquals(1, aging.size());
+  }
+
+  @Test
+  public void lsaArrivingAtMaxAgeIsFlushedOnTheNextTick() {
+    LSA lsa = lsa("10.0.0.2", 1, MAX_AGE);
+    lsd.install(lsa);
+
+    seconds(1);
+    assertEquals(Collections.singletonList(lsa), maxAged);
+  }
+
+  @Test
+  public void ageFollowsTheClockUpToMaxAge() {
+    LSA lsa = lsa("10.0.0.2", 1, 5);
+    lsd.install(lsa);
+
+    clock.advance(12500);
+    assertEquals(17, aging.ageOf(lsa));
+    assertEquals(17, aging.aged(lsa).lsaAge);
+    clock.advance(MAX_AGE * 1000L);
+    assertEquals(MAX_AGE, aging.ageOf(lsa));
+    // an instance that is not the installed one keeps the age it has
+    assertEquals(5, aging.ageOf(lsa("10.0.0.2", 1, 5)));
+  }
+
+  private void seconds(int n) {
+    for (int i = 0; i < n; i++) {
+      clock.advance(1000);
+      wheel.tick();
+    }
+  }
+
+  private static LSA lsa(String id, int seq, int age) {
+    return new LSA(id, seq, age, Collections.singletonList(new LinkDescription(id, -1, 0)));
+  }
+}
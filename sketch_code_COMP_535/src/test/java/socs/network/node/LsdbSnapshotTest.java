@@ -0,0 +1,124 @@
+package socs.network.node;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import socs.network.message.LSA;
+import socs.network.message.LinkDescription;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class LsdbSnapshotTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("lsdb", ".snapshot");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+    new File(file.getPath() + ".tmp").delete();
+  }
+
+  @Test
+  public void writeThenReadGivesTheSameSnapshot() throws IOException {
+    LsdbSnapshot.Neighbor neighbor = new LsdbSnapshot.Neighbor("127.1.1.0", (short) 5002, "192.168.1.100",
+            (short) 3, 250, 1000);
+    LSA own = new LSA("192.168.1.1", 41, 0, Arrays.asList(new LinkDescription("192.168.1.1", -1, 0),
+            new LinkDescription("192.168.1.100", 5002, 3)));
+    LSA remote = new LSA("192.168.1.100", Integer.MIN_VALUE, 3599,
+            Collections.singletonList(new LinkDescription("192.168.1.100", -1, 0)));
+    LsdbSnapshot written = new LsdbSnapshot("192.168.1.1", 1041, Collections.singletonList(neighbor),
+            Arrays.asList(own, remote));
+
+    written.write(file);
+    LsdbSnapshot read = LsdbSnapshot.read(file);
+
+    assertEquals(written.routerIP, read.routerIP);
+    assertEquals(written.written, read.written);
+    assertEquals(written.ownSequence, read.ownSequence);
+    assertEquals(1, read.neighbors.size());
+    LsdbSnapshot.Neighbor n = read.neighbors.get(0);
+    assertEquals(neighbor.processIP, n.processIP);
+    assertEquals(neighbor.processPort, n.processPort);
+    assertEquals(neighbor.simulatedIP, n.simulatedIP);
+    assertEquals(neighbor.weight, n.weight);
+    assertEquals(neighbor.helloInterval, n.helloInterval);
+    assertEquals(neighbor.helloDeadInterval, n.helloDeadInterval);
+    assertEquals(2, read.lsas.size());
+    assertLsa(own, read.lsas.get(0));
+    assertLsa(remote, read.lsas.get(1));
+  }
+
+  @Test
+  public void noFileIsNoSnapshot() throws IOException {
+    file.delete();
+    assertNull(LsdbSnapshot.read(file));
+  }
+
+  @Test
+  public void aFlippedByteIsRejected() throws IOException {
+    snapshot().write(file);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      // a byte of the payload, after magic, version and length
+      raf.seek(12);
+      int b = raf.read();
+      raf.seek(12);
+      raf.write(b ^ 0xff);
+    } finally {
+      raf.close();
+    }
+    assertUnreadable();
+  }
+
+  @Test
+  public void aTruncatedFileIsRejected() throws IOException {
+    snapshot().write(file);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(raf.length() - 1);
+    } finally {
+      raf.close();
+    }
+    assertUnreadable();
+  }
+
+  private static LsdbSnapshot snapshot() {
+    LSA lsa = new LSA("10.0.0.1", 1, Collections.singletonList(new LinkDescription("10.0.0.1", -1, 0)));
+    return new LsdbSnapshot("10.0.0.1", 1000, Collections.<LsdbSnapshot.Neighbor>emptyList(),
+            Collections.singletonList(lsa));
+  }
+
+  private void assertUnreadable() {
+    try {
+      LsdbSnapshot.read(file);
+      fail("read a damaged snapshot");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  private static void assertLsa(LSA expected, LSA actual) {
+    assertEquals(expected.linkStateID, actual.linkStateID);
+    assertEquals(expected.lsaSeqNumber, actual.lsaSeqNumber);
+    assertEquals(expected.lsaAge, actual.lsaAge);
+    assertEquals(expected.links.size(), actual.links.size());
+    for (int i = 0; i < expected.links.size(); i++) {
+      assertEquals(expected.links.get(i).linkID, actual.links.get(i).linkID);
+      assertEquals(expected.links.get(i).portNum, actual.links.get(i).portNum);
+      assertEquals(expected.links.get(i).tosMetrics, actual.links.get(i).tosMetrics);
+    }
+  }
+}
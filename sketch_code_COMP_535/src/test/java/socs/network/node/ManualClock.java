@@ -0,0 +1,21 @@
+package socs.network.node;
+
+/**
+ * a clock that only moves when the test says so
+ */
+class ManualClock implements Clock {
+
+  private long now;
+
+  ManualClock(long now) {
+    this.now = now;
+  }
+
+  public synchronized long millis() {
+    return now;
+  }
+
+  synchronized void advance(long millis) {
+    now += millis;
+  }
+}
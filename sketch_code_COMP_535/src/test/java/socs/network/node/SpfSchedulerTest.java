@@ -0,0 +1,154 @@
+package socs.network.node;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * the scheduled runs are kept instead of executed; the test moves the clock to each deadline and
+ * runs them itself
+ */
+public class SpfSchedulerTest {
+
+  private static final long INITIAL = 50;
+  private static final long HOLD = 200;
+  private static final long MAX_HOLD = 1000;
+
+  private final ManualClock clock = new ManualClock(1000000);
+  private final RecordingExecutor executor = new RecordingExecutor();
+  private int runs = 0;
+  private final SpfScheduler scheduler = new SpfScheduler(executor, INITIAL, HOLD, MAX_HOLD, new Runnable() {
+    public void run() {
+      runs++;
+    }
+  }, clock);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void firstChangeRunsAfterTheInitialDelay() {
+    scheduler.changed();
+    assertEquals(INITIAL, executor.nextDelay());
+    executor.runNext(clock);
+    assertEquals(1, runs);
+  }
+
+  @Test
+  public void burstEndsUpInOneRun() {
+    scheduler.changed();
+    clock.advance(10);
+    scheduler.changed();
+    scheduler.changed();
+
+    assertEquals(1, executor.scheduled());
+    executor.runNext(clock);
+    assertEquals(1, runs);
+  }
+
+  @Test
+  public void holdTimeDoublesUpToTheMaximum() {
+    scheduler.changed();
+    executor.runNext(clock);
+    assertEquals(HOLD, scheduler.holdTime());
+
+    // every change right after a run waits out the rest of the hold time, which then doubles
+    long[] holds = {200, 400, 800, 1000, 1000};
+    for (int i = 0; i < holds.length; i++) {
+      clock.advance(10);
+      scheduler.changed();
+      assertEquals("change " + i, holds[i] - 10, executor.nextDelay());
+      executor.runNext(clock);
+      assertEquals("run " + i, Math.min(holds[i] * 2, MAX_HOLD), scheduler.holdTime());
+    }
+    assertEquals(1 + holds.length, runs);
+  }
+
+  @Test
+  public void quietPeriodResetsTheHoldTime() {
+    scheduler.changed();
+    executor.runNext(clock);
+    clock.advance(10);
+    scheduler.changed();
+    executor.runNext(clock);
+    assertEquals(2 * HOLD, scheduler.holdTime());
+
+    clock.advance(MAX_HOLD);
+    scheduler.changed();
+
+    assertEquals(HOLD, scheduler.holdTime());
+    assertEquals(INITIAL, executor.nextDelay());
+  }
+
+  @Test
+  public void changeLongAfterTheHoldWaitsTheInitialDelayOnly() {
+    scheduler.changed();
+    executor.runNext(clock);
+    clock.advance(HOLD + 100);
+    scheduler.changed();
+
+    assertEquals(INITIAL, executor.nextDelay());
+  }
+
+  @Test
+  public void changeDuringARunIsPickedUpByTheNext() {
+    final SpfScheduler[] self = new SpfScheduler[1];
+    self[0] = new SpfScheduler(executor, INITIAL, HOLD, MAX_HOLD, new Runnable() {
+      public void run() {
+        runs++;
+        if (runs == 1) self[0].changed();
+      }
+    }, clock);
+
+    self[0].changed();
+    executor.runNext(clock);
+
+    assertEquals(1, executor.scheduled());
+    assertEquals(HOLD, executor.nextDelay());
+    executor.runNext(clock);
+    assertEquals(2, runs);
+  }
+
+  /**
+   * keeps what SpfScheduler schedules, never starts a thread
+   */
+  private static class RecordingExecutor extends ScheduledThreadPoolExecutor {
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+    private final List<Long> delays = new ArrayList<Long>();
+
+    RecordingExecutor() {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      tasks.add(command);
+      delays.add(unit.toMillis(delay));
+      return null;
+    }
+
+    int scheduled() {
+      return tasks.size();
+    }
+
+    long nextDelay() {
+      return delays.get(0);
+    }
+
+    // move the clock to the deadline of the oldest scheduled run and run it
+    void runNext(ManualClock clock) {
+      clock.advance(delays.remove(0));
+      tasks.remove(0).run();
+    }
+  }
+}
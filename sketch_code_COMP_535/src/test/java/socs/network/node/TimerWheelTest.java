@@ -0,0 +1,109 @@
+package socs.network.node;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * the wheel is never started, the tests tick it themselves
+ */
+public class TimerWheelTest {
+
+  private final List<String> ran = new ArrayList<String>();
+
+  @Test
+  public void tasksRunInDeadlineOrder() {
+    TimerWheel wheel = new TimerWheel(10, 8);
+    wheel.schedule(task("c"), 50);
+    wheel.schedule(task("a"), 10);
+    wheel.schedule(task("b"), 30);
+
+    assertEquals(Arrays.asList("a"), ticks(wheel, 1));
+    assertEquals(Collections.<String>emptyList(), ticks(wheel, 1));
+    assertEquals(Arrays.asList("b"), ticks(wheel, 1));
+    assertEquals(Arrays.asList("c"), ticks(wheel, 2));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void delaysRoundUpToWholeTicks() {
+    TimerWheel wheel = new TimerWheel(10, 8);
+    wheel.schedule(task("now"), 0);
+    wheel.schedule(task("11ms"), 11);
+
+    assertEquals(Arrays.asList("now"), ticks(wheel, 1));
+    assertEquals(Arrays.asList("11ms"), ticks(wheel, 1));
+  }
+
+  @Test
+  public void delaysLongerThanATurnWaitForTheirRound() {
+    TimerWheel wheel = new TimerWheel(10, 8);
+    // 8 ticks is one full turn, 19 ticks lands in the same slot as 3
+    wheel.schedule(task("19"), 190);
+    wheel.schedule(task("3"), 30);
+    wheel.schedule(task("8"), 80);
+    wheel.schedule(task("11"), 110);
+
+    assertEquals(Arrays.asList("3"), ticks(wheel, 3));
+    assertEquals(Arrays.asList("8"), ticks(wheel, 5));
+    assertEquals(Arrays.asList("11"), ticks(wheel, 3));
+    assertEquals(Collections.<String>emptyList(), ticks(wheel, 7));
+    assertEquals(Arrays.asList("19"), ticks(wheel, 1));
+  }
+
+  @Test
+  public void sameDeadlineRunsInScheduleOrder() {
+    TimerWheel wheel = new TimerWheel(10, 4);
+    wheel.schedule(task("first"), 20);
+    wheel.schedule(task("second"), 20);
+    wheel.schedule(task("third"), 15);
+
+    assertEquals(Arrays.asList("first", "second", "third"), ticks(wheel, 2));
+  }
+
+  @Test
+  public void cancelledTaskDoesNotRun() {
+    TimerWheel wheel = new TimerWheel(10, 8);
+    TimerWheel.Timeout cancelled = wheel.schedule(task("cancelled"), 20);
+    wheel.schedule(task("kept"), 20);
+    cancelled.cancel();
+
+    assertEquals(1, wheel.size());
+    assertEquals(Arrays.asList("kept"), ticks(wheel, 2));
+  }
+
+  @Test
+  public void failingTaskDoesNotStopTheOthers() {
+    TimerWheel wheel = new TimerWheel(10, 8);
+    wheel.schedule(new Runnable() {
+      public void run() {
+        throw new IllegalStateException("expected by the test");
+      }
+    }, 10);
+    wheel.schedule(task("after"), 10);
+    wheel.schedule(task("later"), 20);
+
+    assertEquals(Arrays.asList("after"), ticks(wheel, 1));
+    assertEquals(Arrays.asList("later"), ticks(wheel, 1));
+  }
+
+  // the tasks that ran during the next n ticks
+  private List<String> ticks(TimerWheel wheel, int n) {
+    ran.clear();
+    for (int i = 0; i < n; i++) wheel.tick();
+    return new ArrayList<String>(ran);
+  }
+
+  private Runnable task(final String name) {
+    return new Runnable() {
+      public void run() {
+        ran.add(name);
+      }
+    };
+  }
+}